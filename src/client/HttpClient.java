@@ -11,8 +11,8 @@ import java.util.Map;
 import java.util.Scanner;
 
 public class HttpClient {
-    // 缓存资源的Last-Modified时间（用于304判断）
-    private static final Map<String, Long> resourceCache = new HashMap<>();
+    // 缓存资源的校验值（Last-Modified、ETag，用于304判断）
+    private static final Map<String, CacheValidator> resourceCache = new HashMap<>();
     private static final Scanner scanner = new Scanner(System.in);
     // 最大重定向次数（防止循环重定向）
     private static final int MAX_REDIRECT = 3;
@@ -155,12 +155,17 @@ public class HttpClient {
                     request.append("Content-Type: application/x-www-form-urlencoded\r\n");
                     request.append("Content-Length: ").append(bodyBytes.length).append("\r\n");
                 }
-                // 对GET请求添加缓存验证头（If-Modified-Since）
+                // 对GET请求添加缓存验证头（If-None-Match、If-Modified-Since）
                 if ("GET".equals(method)) {
                     String cacheKey = currentUrl.toString();
-                    Long cached = resourceCache.get(cacheKey);
+                    CacheValidator cached = resourceCache.get(cacheKey);
                     if (cached != null) {
-                        request.append("If-Modified-Since: ").append(cached).append("\r\n");
+                        if (cached.etag != null) {
+                            request.append("If-None-Match: ").append(cached.etag).append("\r\n");
+                        }
+                        if (cached.lastModified != null) {
+                            request.append("If-Modified-Since: ").append(cached.lastModified).append("\r\n");
+                        }
                     }
                 }
                 request.append("\r\n"); // 空行分隔头和体
@@ -174,7 +179,7 @@ public class HttpClient {
                 rawOut.flush();
 
                 // 4. 接收并解析响应
-                ResponseInfo response = parseResponse(rawIn);
+                ResponseInfo response = parseResponse(rawIn, method);
                 System.out.println("\n=== 响应结果 ===");
                 System.out.println("状态码: " + response.statusCode + " " + response.statusMsg);
                 System.out.println("响应头: " + response.headers);
@@ -188,14 +193,11 @@ public class HttpClient {
                 // 处理200（成功）
                 if (response.statusCode == 200) {
                     System.out.println("响应体:\n" + response.body);
-                    // 缓存Last-Modified（用于后续304判断）
-                    if (response.headers.containsKey("last-modified")) {
-                        try {
-                            long lastModified = Long.parseLong(response.headers.get("last-modified"));
-                            resourceCache.put(currentUrl.toString(), lastModified);
-                        } catch (NumberFormatException e) {
-                            // 忽略格式错误的Last-Modified
-                        }
+                    // 缓存Last-Modified与ETag（用于后续304判断）
+                    String lastModified = response.headers.get("last-modified");
+                    String etag = response.headers.get("etag");
+                    if (lastModified != null || etag != null) {
+                        resourceCache.put(currentUrl.toString(), new CacheValidator(lastModified, etag));
                     }
                     return;
                 }
@@ -234,7 +236,7 @@ public class HttpClient {
     }
 
     // 解析服务器响应（状态行、响应头、响应体）
-    private static ResponseInfo parseResponse(InputStream in) throws IOException {
+    private static ResponseInfo parseResponse(InputStream in, String method) throws IOException {
         ResponseInfo response = new ResponseInfo();
 
         // 1. 解析状态行（如 HTTP/1.1 200 OK）
@@ -263,9 +265,16 @@ public class HttpClient {
             }
         }
 
-        // 3. 解析响应体（根据Content-Length读取）
+        // 3. 解析响应体（分块传输编码优先，其次根据Content-Length读取）
         byte[] bodyBytes;
-        if (response.headers.containsKey("content-length")) {
+        String transferEncoding = response.headers.get("transfer-encoding");
+        if ("HEAD".equals(method) || response.statusCode == 304 || response.statusCode == 204
+                || (response.statusCode >= 100 && response.statusCode < 200)) {
+            // 这些响应没有响应体
+            bodyBytes = new byte[0];
+        } else if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked")) {
+            bodyBytes = readChunkedBytes(in, response.headers);
+        } else if (response.headers.containsKey("content-length")) {
             try {
                 long contentLength = Long.parseLong(response.headers.get("content-length"));
                 bodyBytes = readFixedBytes(in, contentLength);
@@ -348,6 +357,50 @@ public class HttpClient {
         return data;
     }
 
+    /**
+     * 解码分块传输编码的响应体：每块为「十六进制长度[;扩展]\r\n 数据 \r\n」，长度为 0 的块表示结束，
+     * 其后可能跟随尾部响应头（trailer），读入 headers 中
+     */
+    private static byte[] readChunkedBytes(InputStream in, Map<String, String> headers) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        while (true) {
+            String sizeLine = readLine(in);
+            if (sizeLine == null) throw new EOFException("Unexpected EOF while reading chunk size");
+            int ext = sizeLine.indexOf(';');
+            String hex = (ext >= 0 ? sizeLine.substring(0, ext) : sizeLine).trim();
+            long size;
+            try {
+                size = Long.parseLong(hex, 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk size: " + sizeLine);
+            }
+            if (size < 0 || body.size() + size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Chunked body too large");
+            }
+            if (size == 0) break;
+            long remaining = size;
+            while (remaining > 0) {
+                int read = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+                if (read == -1) throw new EOFException("Unexpected EOF while reading chunk data");
+                body.write(buf, 0, read);
+                remaining -= read;
+            }
+            // 块数据后的 CRLF
+            String end = readLine(in);
+            if (end == null || !end.isEmpty()) throw new IOException("Missing CRLF after chunk data");
+        }
+        // 尾部响应头，以空行结束
+        String trailer;
+        while ((trailer = readLine(in)) != null && !trailer.isEmpty()) {
+            int idx = trailer.indexOf(':');
+            if (idx > 0) {
+                headers.put(trailer.substring(0, idx).trim().toLowerCase(Locale.ROOT), trailer.substring(idx + 1).trim());
+            }
+        }
+        return body.toByteArray();
+    }
+
     // 读取输入流剩余内容（用于无Content-Length的情况）
     private static byte[] readRemainingBytes(InputStream in) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -377,6 +430,17 @@ public class HttpClient {
         }
     }
 
+    // 内部类：缓存的资源校验值（原样回传给服务器）
+    private static class CacheValidator {
+        String lastModified;
+        String etag;
+
+        CacheValidator(String lastModified, String etag) {
+            this.lastModified = lastModified;
+            this.etag = etag;
+        }
+    }
+
     // 内部类：封装响应解析结果
     private static class ResponseInfo {
         int statusCode;
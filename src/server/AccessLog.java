@@ -0,0 +1,380 @@
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 访问日志：每个处理完的请求记录时间、连接编号、方法、请求目标、状态码、响应体字节数与处理耗时
+ * <p>
+ * 请求线程只把记录放入 {@link RingBuffer}（满时丢弃并计数，不阻塞），由后台线程成批编码到堆外缓冲区，
+ * 经 {@link FileChannel} 写入当前日志文件。文件超过 {@link #MAX_FILE_BYTES} 或打开超过轮转周期后
+ * 切换到新文件（文件名带创建时间）。
+ * <p>
+ * 两种格式：文本（每行一条，空格分隔）与紧凑二进制（文件头 {@link #MAGIC} + 版本号，之后每条为带长度前缀的
+ * 定长字段 + 方法名 + 请求目标），二进制文件可用 {@code java server.AccessLog <文件>} 转为文本查看。
+ * <p>
+ * 可通过系统属性调整：{@code server.accessLog}（目录，默认 logs，设为 off 关闭）、
+ * {@code server.accessLogFormat}（text/binary）、{@code server.accessLogMaxBytes}、
+ * {@code server.accessLogRotateMinutes}。
+ */
+final class AccessLog implements Closeable {
+    /**
+     * 日志文件格式
+     */
+    enum Format {
+        TEXT(".log"),
+        BINARY(".bin");
+
+        final String suffix;
+
+        Format(String suffix) {
+            this.suffix = suffix;
+        }
+    }
+
+    static final String DIRECTORY = System.getProperty("server.accessLog", "logs");
+    static final Format FORMAT = "binary".equalsIgnoreCase(System.getProperty("server.accessLogFormat"))
+            ? Format.BINARY : Format.TEXT;
+    // 单个日志文件的最大字节数
+    static final long MAX_FILE_BYTES = Long.getLong("server.accessLogMaxBytes", 64L * 1024 * 1024);
+    // 单个日志文件最长使用时间（默认一天）
+    static final long ROTATE_MINUTES = Long.getLong("server.accessLogRotateMinutes", 24 * 60);
+
+    // 二进制文件头："HAL" + 版本号
+    static final int MAGIC = 0x48414C00;
+    static final int VERSION = 1;
+    // 环形缓冲区容量与每批最多写出的记录数
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int BATCH_SIZE = 512;
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+    // 请求目标最多记录的字节数
+    private static final int MAX_TARGET_BYTES = 2048;
+    private static final int MAX_METHOD_BYTES = 32;
+    // 二进制记录定长部分：时间 8 + 连接编号 4 + 状态码 2 + 耗时（微秒）4 + 字节数 8 + 方法名长度 1 + 目标长度 2
+    private static final int FIXED_RECORD_BYTES = 8 + 4 + 2 + 4 + 8 + 1 + 2;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    /**
+     * 一条访问记录（不可变）
+     */
+    static final class Entry {
+        final long timeMillis;
+        final int connectionId;
+        final String method;
+        final String target;
+        final int status;
+        final long bytes;
+        final long latencyNanos;
+
+        Entry(long timeMillis, int connectionId, String method, String target, int status, long bytes,
+              long latencyNanos) {
+            this.timeMillis = timeMillis;
+            this.connectionId = connectionId;
+            this.method = method;
+            this.target = target;
+            this.status = status;
+            this.bytes = bytes;
+            this.latencyNanos = latencyNanos;
+        }
+    }
+
+    private final Path directory;
+    private final Format format;
+    private final long maxFileBytes;
+    private final long rotateMillis;
+    private final RingBuffer<Entry> buffer = new RingBuffer<>(BUFFER_SIZE);
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // 以下只由写出线程访问
+    private final ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+    private FileChannel channel;
+    private long fileBytes;
+    private long fileOpenedAt;
+    private boolean failing;
+    private long cachedSecond = Long.MIN_VALUE;
+    private byte[] cachedTime;
+
+    /**
+     * @param directory    日志目录（不存在时创建）
+     * @param format       文件格式
+     * @param maxFileBytes 单个文件的最大字节数
+     * @param rotateMillis 单个文件最长使用时间
+     */
+    AccessLog(Path directory, Format format, long maxFileBytes, long rotateMillis) {
+        this.directory = directory;
+        this.format = format;
+        this.maxFileBytes = maxFileBytes;
+        this.rotateMillis = rotateMillis;
+        this.writer = new Thread(this::run, "access-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // 按系统属性创建；访问日志被关闭时返回 null
+    static AccessLog createDefault() {
+        if (DIRECTORY.isEmpty() || "off".equalsIgnoreCase(DIRECTORY)) {
+            return null;
+        }
+        return new AccessLog(Paths.get(DIRECTORY), FORMAT, MAX_FILE_BYTES, TimeUnit.MINUTES.toMillis(ROTATE_MINUTES));
+    }
+
+    /**
+     * 记录一个已处理的请求（请求线程调用，只入队）
+     */
+    void record(int connectionId, String method, String target, int status, long bytes, long latencyNanos) {
+        if (closed) {
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), connectionId, method, target, status, bytes, latencyNanos);
+        if (!buffer.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    // 因缓冲区已满被丢弃的记录数
+    long droppedCount() {
+        return dropped.sum();
+    }
+
+    // 已写入文件的记录数
+    long writtenCount() {
+        return written.sum();
+    }
+
+    // 写出已入队的记录并关闭当前文件
+    @Override
+    public void close() {
+        closed = true;
+        buffer.wakeUp();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            // 先读 closed 再取数据：关闭后最后一轮仍会写完已入队的记录
+            boolean last = closed;
+            buffer.drainTo(batch, BATCH_SIZE);
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+                continue;
+            }
+            if (last) {
+                break;
+            }
+            buffer.await(IDLE_PARK_NANOS);
+        }
+        closeFile();
+    }
+
+    private void writeBatch(List<Entry> batch) {
+        try {
+            for (Entry entry : batch) {
+                if (channel == null || fileBytes >= maxFileBytes || entry.timeMillis - fileOpenedAt >= rotateMillis) {
+                    rotate(entry.timeMillis);
+                }
+                if (out.remaining() < FIXED_RECORD_BYTES + 64 + MAX_METHOD_BYTES + MAX_TARGET_BYTES) {
+                    flushBuffer();
+                }
+                int start = out.position();
+                if (format == Format.BINARY) {
+                    encodeBinary(entry);
+                } else {
+                    encodeText(entry);
+                }
+                fileBytes += out.position() - start;
+            }
+            // 每批写出一次（不 fsync）
+            flushBuffer();
+            written.add(batch.size());
+            failing = false;
+        } catch (IOException e) {
+            if (!failing) {
+                Log.error("Access log write failed: " + e.getMessage());
+                failing = true;
+            }
+            dropped.add(batch.size());
+            out.clear();
+            closeFile();
+        }
+    }
+
+    // 关闭当前文件，按时间戳创建新文件（同一秒内多次轮转时加序号）
+    private void rotate(long now) throws IOException {
+        flushBuffer();
+        closeFile();
+        Files.createDirectories(directory);
+        String base = "access-" + LocalDateTime.ofInstant(Instant.ofEpochMilli(now), ZONE).format(FILE_TIME_FORMAT);
+        for (int i = 0; ; i++) {
+            Path file = directory.resolve(base + (i == 0 ? "" : "-" + i) + format.suffix);
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // 换一个序号
+            }
+        }
+        fileBytes = 0;
+        fileOpenedAt = now;
+        if (format == Format.BINARY) {
+            out.putInt(MAGIC | VERSION);
+            fileBytes = 4;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.flip();
+        try {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } finally {
+            out.clear();
+        }
+    }
+
+    private void closeFile() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    private void encodeBinary(Entry entry) {
+        int lengthPos = out.position();
+        out.putShort((short) 0); // 记录长度，写完后回填
+        out.putLong(entry.timeMillis);
+        out.putInt(entry.connectionId);
+        out.putShort((short) entry.status);
+        out.putInt((int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(entry.latencyNanos)));
+        out.putLong(entry.bytes);
+        int methodLength = Math.min(entry.method.length(), MAX_METHOD_BYTES);
+        out.put((byte) methodLength);
+        putLatin1(entry.method, methodLength);
+        int targetLength = Math.min(entry.target.length(), MAX_TARGET_BYTES);
+        out.putShort((short) targetLength);
+        putLatin1(entry.target, targetLength);
+        out.putShort(lengthPos, (short) (out.position() - lengthPos - 2));
+    }
+
+    // 文本格式：时间 #连接编号 方法 目标 状态码 字节数 耗时（毫秒）
+    private void encodeText(Entry entry) {
+        long second = entry.timeMillis / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.timeMillis), ZONE)
+                    .format(TIME_FORMAT).getBytes(StandardCharsets.US_ASCII);
+        }
+        out.put(cachedTime);
+        out.put((byte) '.');
+        putThreeDigits((int) (entry.timeMillis % 1000));
+        out.put((byte) ' ').put((byte) '#');
+        putAscii(Integer.toString(entry.connectionId));
+        out.put((byte) ' ');
+        putLatin1(entry.method, Math.min(entry.method.length(), MAX_METHOD_BYTES));
+        out.put((byte) ' ');
+        putLatin1(entry.target, Math.min(entry.target.length(), MAX_TARGET_BYTES));
+        out.put((byte) ' ');
+        putAscii(Integer.toString(entry.status));
+        out.put((byte) ' ');
+        putAscii(Long.toString(entry.bytes));
+        out.put((byte) ' ');
+        long micros = TimeUnit.NANOSECONDS.toMicros(entry.latencyNanos);
+        putAscii(Long.toString(micros / 1000));
+        out.put((byte) '.');
+        putThreeDigits((int) (micros % 1000));
+        out.put((byte) '\n');
+    }
+
+    // 请求目标由解析器按 ISO-8859-1 解码，按同一编码写回即为原始字节
+    private void putLatin1(String s, int length) {
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            // 文本格式中控制字符与空格替换，保证一行一条、字段可按空格分隔
+            out.put(format == Format.TEXT && c <= ' ' ? (byte) '_' : (byte) c);
+        }
+    }
+
+    private void putAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            out.put((byte) s.charAt(i));
+        }
+    }
+
+    // 0-999 补齐为三位数字
+    private void putThreeDigits(int value) {
+        out.put((byte) ('0' + value / 100)).put((byte) ('0' + value / 10 % 10)).put((byte) ('0' + value % 10));
+    }
+
+    /**
+     * 把二进制访问日志转为文本输出：java server.AccessLog &lt;文件&gt;...
+     */
+    public static void main(String[] args) throws IOException {
+        for (String name : args) {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(Paths.get(name)));
+            if (in.remaining() < 4 || in.getInt() != (MAGIC | VERSION)) {
+                System.err.println(name + ": not a binary access log");
+                continue;
+            }
+            StringBuilder sb = new StringBuilder();
+            while (in.remaining() >= 2) {
+                int length = in.getShort() & 0xffff;
+                if (in.remaining() < length) {
+                    break; // 写到一半的尾部记录
+                }
+                long time = in.getLong();
+                int connectionId = in.getInt();
+                int status = in.getShort() & 0xffff;
+                int latencyMicros = in.getInt();
+                long bytes = in.getLong();
+                String method = getLatin1(in, in.get() & 0xff);
+                String target = getLatin1(in, in.getShort() & 0xffff);
+                sb.setLength(0);
+                sb.append(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZONE).format(TIME_FORMAT))
+                        .append('.').append(String.format("%03d", time % 1000))
+                        .append(" #").append(connectionId).append(' ').append(method).append(' ').append(target)
+                        .append(' ').append(status).append(' ').append(bytes)
+                        .append(' ').append(latencyMicros / 1000).append('.')
+                        .append(String.format("%03d", latencyMicros % 1000));
+                System.out.println(sb);
+            }
+        }
+    }
+
+    private static String getLatin1(ByteBuffer in, int length) {
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,181 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接准入控制：在 accept 之后、交给处理线程之前决定是否接受连接（线程安全）
+ * <p>
+ * 每个客户端 IP 一个令牌桶，限制新建连接的速率；令牌桶表按 IP 哈希分段加锁，每段为按访问顺序淘汰的
+ * LRU 表，记录的 IP 数有上限。此外全局限制同时打开的连接数。
+ * 被拒绝的连接立即收到 {@code 429 Too Many Requests}（单个 IP 过快）或 {@code 503 Service Unavailable}
+ * （服务器已满），都带 {@code Retry-After}，然后关闭，不进入任何队列，过载时延迟不会无限增长。
+ * <p>
+ * 参数可通过系统属性调整：{@code server.maxConnections}、{@code server.ipConnectionRate}（每秒新连接数）、
+ * {@code server.ipConnectionBurst}（突发上限）。
+ */
+final class AdmissionControl {
+    /**
+     * 准入结果
+     */
+    enum Decision {
+        ACCEPT,
+        // 该 IP 新建连接过快
+        RATE_LIMITED,
+        // 全局连接数或工作队列已满
+        OVERLOADED
+    }
+
+    static final int MAX_CONNECTIONS = Integer.getInteger("server.maxConnections", 10_000);
+    static final int IP_CONNECTION_RATE = Integer.getInteger("server.ipConnectionRate", 100);
+    static final int IP_CONNECTION_BURST = Integer.getInteger("server.ipConnectionBurst", 200);
+    // 建议客户端重试的秒数
+    static final int RETRY_AFTER_SECONDS = 1;
+
+    // 令牌桶表分段数（2 的幂）与最多记录的 IP 数
+    private static final int STRIPES = 16;
+    private static final int MAX_TRACKED_IPS = 64 * 1024;
+
+    private static final byte[] TOO_MANY_REQUESTS = rejection("429 Too Many Requests");
+    private static final byte[] SERVICE_UNAVAILABLE = rejection("503 Service Unavailable");
+
+    private final int maxConnections;
+    private final double ratePerNano;
+    private final double burst;
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder overloaded = new LongAdder();
+    private final Map<InetAddress, TokenBucket>[] stripes;
+
+    /**
+     * @param maxConnections 同时打开的最大连接数
+     * @param ratePerSecond  每个 IP 每秒可新建的连接数
+     * @param burst          每个 IP 可突发新建的连接数
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    AdmissionControl(int maxConnections, int ratePerSecond, int burst) {
+        this.maxConnections = maxConnections;
+        this.ratePerNano = ratePerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.stripes = new Map[STRIPES];
+        int perStripe = MAX_TRACKED_IPS / STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new LinkedHashMap<InetAddress, TokenBucket>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<InetAddress, TokenBucket> eldest) {
+                    return size() > perStripe;
+                }
+            };
+        }
+    }
+
+    static AdmissionControl createDefault() {
+        return new AdmissionControl(MAX_CONNECTIONS, IP_CONNECTION_RATE, IP_CONNECTION_BURST);
+    }
+
+    private static final class TokenBucket {
+        double tokens;
+        long lastRefill;
+
+        TokenBucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+    }
+
+    /**
+     * 判断是否接受来自 ip 的新连接；返回 ACCEPT 时占用一个连接名额，连接关闭后必须调用 {@link #release()}
+     */
+    Decision tryAdmit(InetAddress ip) {
+        if (!takeToken(ip)) {
+            rateLimited.increment();
+            return Decision.RATE_LIMITED;
+        }
+        while (true) {
+            int n = active.get();
+            if (n >= maxConnections) {
+                overloaded.increment();
+                return Decision.OVERLOADED;
+            }
+            if (active.compareAndSet(n, n + 1)) {
+                return Decision.ACCEPT;
+            }
+        }
+    }
+
+    // 已接受的连接无法交给处理线程（工作队列已满）：归还名额并计为过载
+    void shed() {
+        active.decrementAndGet();
+        overloaded.increment();
+    }
+
+    // 连接关闭，归还名额
+    void release() {
+        active.decrementAndGet();
+    }
+
+    int activeConnections() {
+        return active.get();
+    }
+
+    long rateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    long overloadedCount() {
+        return overloaded.sum();
+    }
+
+    private boolean takeToken(InetAddress ip) {
+        Map<InetAddress, TokenBucket> stripe = stripes[(ip.hashCode() * 0x9E3779B9 >>> 28) & (STRIPES - 1)];
+        long now = System.nanoTime();
+        synchronized (stripe) {
+            TokenBucket bucket = stripe.get(ip);
+            if (bucket == null) {
+                stripe.put(ip, new TokenBucket(burst - 1, now));
+                return true;
+            }
+            bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.lastRefill) * ratePerNano);
+            bucket.lastRefill = now;
+            if (bucket.tokens < 1) {
+                return false;
+            }
+            bucket.tokens -= 1;
+            return true;
+        }
+    }
+
+    /**
+     * 向被拒绝的连接写出 429/503 响应并关闭（不阻塞：只写一次，读掉已到达的请求数据以免内核以 RST 关闭连接）
+     */
+    static void reject(SocketChannel channel, Decision decision) {
+        try {
+            channel.configureBlocking(false);
+            channel.write(ByteBuffer.wrap(decision == Decision.RATE_LIMITED ? TOO_MANY_REQUESTS : SERVICE_UNAVAILABLE));
+            channel.shutdownOutput();
+            channel.read(ByteBuffer.allocate(4096));
+        } catch (IOException ignored) {
+            // 客户端已断开
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static byte[] rejection(String status) {
+        return ("HTTP/1.1 " + status + "\r\n"
+                + "Retry-After: " + RETRY_AFTER_SECONDS + "\r\n"
+                + "Connection: close\r\n"
+                + "Content-Length: 0\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,92 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 请求头 Range 中的一个字节区间（闭区间 [start, end]）
+ */
+final class ByteRange {
+    // 单个请求允许的最大区间数，超出时忽略 Range 返回完整内容
+    static final int MAX_RANGES = 16;
+
+    final long start;
+    final long end;
+
+    ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    long length() {
+        return end - start + 1;
+    }
+
+    // Content-Range 响应头的值，如 bytes 0-499/1234
+    String contentRange(long totalLength) {
+        return "bytes " + start + "-" + end + "/" + totalLength;
+    }
+
+    /**
+     * 解析 Range 请求头（RFC 7233），支持 a-b、a-、-n 三种形式及逗号分隔的多区间
+     *
+     * @param header      Range 请求头的值
+     * @param totalLength 资源总长度
+     * @return 可满足的区间列表；语法错误、区间过多或区间重叠返回 null（按完整内容响应）；
+     *         全部不可满足返回空列表（响应 416）
+     */
+    static List<ByteRange> parse(String header, long totalLength) {
+        if (header == null || !header.startsWith("bytes=")) {
+            return null;
+        }
+        String[] specs = header.substring("bytes=".length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<ByteRange> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            try {
+                if (first.isEmpty()) {
+                    // 后缀区间：最后 n 个字节
+                    long suffix = Long.parseLong(last);
+                    if (suffix <= 0) continue;
+                    start = Math.max(0, totalLength - suffix);
+                    end = totalLength - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    end = last.isEmpty() ? totalLength - 1 : Math.min(Long.parseLong(last), totalLength - 1);
+                    if (!last.isEmpty() && Long.parseLong(last) < start) {
+                        return null;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (start >= totalLength || start > end) {
+                continue; // 不可满足的区间
+            }
+            ranges.add(new ByteRange(start, end));
+        }
+
+        // 重叠区间可被用来放大响应，直接按完整内容处理
+        for (int i = 0; i < ranges.size(); i++) {
+            for (int j = i + 1; j < ranges.size(); j++) {
+                ByteRange a = ranges.get(i);
+                ByteRange b = ranges.get(j);
+                if (a.start <= b.end && b.start <= a.end) {
+                    return null;
+                }
+            }
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,132 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 流式响应体输出流：HTTP/1.1 下按分块传输编码（Transfer-Encoding: chunked）写出，
+ * HTTP/1.0 下按原样写出（以关闭连接表示结束）
+ * <p>
+ * 写入的数据先攒在块缓冲区中，满了才作为一个块写到底层流，响应体不需要事先知道总长度，
+ * 占用的内存只有一个块。块缓冲区从全局池中借用，{@link #close()} 时归还；
+ * 缓冲区前后预留了块长度行与结尾 CRLF 的位置，每个块只需一次写出。
+ * {@link #close()} 写出剩余数据和结束块，但不关闭底层连接。
+ */
+final class ChunkedOutputStream extends OutputStream {
+    // 单个块的数据容量
+    static final int CHUNK_SIZE = 8 * 1024;
+    // 池中最多保留的空闲块缓冲区数
+    private static final int POOL_SIZE = 64;
+    // 块长度行最长为 8 位十六进制 + CRLF
+    private static final int HEADER_ROOM = 10;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final ArrayBlockingQueue<byte[]> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final OutputStream out;
+    private final boolean chunked;
+    private byte[] buf;
+    // 数据写入位置（数据从 HEADER_ROOM 开始）
+    private int pos = HEADER_ROOM;
+    // 已写入的响应体字节数（不含分块编码）
+    private long written;
+
+    /**
+     * @param out     底层输出流（响应头已写出）
+     * @param chunked true 使用分块编码；false 按原样写出
+     */
+    ChunkedOutputStream(OutputStream out, boolean chunked) {
+        this.out = out;
+        this.chunked = chunked;
+        byte[] pooled = POOL.poll();
+        this.buf = pooled != null ? pooled : new byte[HEADER_ROOM + CHUNK_SIZE + 2];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (pos == HEADER_ROOM + CHUNK_SIZE) {
+            writeChunk();
+        }
+        buf[pos++] = (byte) b;
+        written++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (pos == HEADER_ROOM + CHUNK_SIZE) {
+                writeChunk();
+            }
+            int n = Math.min(len, HEADER_ROOM + CHUNK_SIZE - pos);
+            System.arraycopy(b, off, buf, pos, n);
+            pos += n;
+            off += n;
+            len -= n;
+            written += n;
+        }
+    }
+
+    // 把已缓冲的数据作为一个块写出并推送给客户端
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeChunk();
+        out.flush();
+    }
+
+    // 写出最后的数据块与结束块（0 长度块）并归还块缓冲区，底层流保持打开
+    @Override
+    public void close() throws IOException {
+        if (buf == null) {
+            return;
+        }
+        try {
+            writeChunk();
+            if (chunked) {
+                out.write(LAST_CHUNK);
+            }
+            out.flush();
+        } finally {
+            POOL.offer(buf);
+            buf = null;
+        }
+    }
+
+    long bytesWritten() {
+        return written;
+    }
+
+    private void writeChunk() throws IOException {
+        int size = pos - HEADER_ROOM;
+        if (size == 0) {
+            return;
+        }
+        if (!chunked) {
+            out.write(buf, HEADER_ROOM, size);
+            pos = HEADER_ROOM;
+            return;
+        }
+        // 块长度行（十六进制 + CRLF）从后往前写在数据之前
+        int start = HEADER_ROOM;
+        buf[--start] = '\n';
+        buf[--start] = '\r';
+        for (int n = size; ; n >>>= 4) {
+            buf[--start] = HEX[n & 0xf];
+            if (n < 16) break;
+        }
+        buf[pos++] = '\r';
+        buf[pos++] = '\n';
+        out.write(buf, start, pos - start);
+        pos = HEADER_ROOM;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buf == null) {
+            throw new IOException("Response body stream already closed");
+        }
+    }
+}
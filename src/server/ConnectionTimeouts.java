@@ -0,0 +1,39 @@
+package server;
+
+/**
+ * 连接各阶段的超时设置（BIO 与 NIO 引擎共用）与共享的超时时间轮
+ * <p>
+ * 每个阶段只设置一次截止时间，客户端每隔一会儿送一个字节也不会延长：
+ * <ul>
+ *   <li>请求头：收到第一个字节后 {@link #HEADER_TIMEOUT_MS} 内必须收齐；</li>
+ *   <li>请求体、响应写出：按最低传输速率计算，{@link #transferTimeoutMillis}；</li>
+ *   <li>长连接空闲：{@link RequestHandler#KEEP_ALIVE_TIMEOUT_MS}。</li>
+ * </ul>
+ * 到期后连接被关闭，占用的线程随即释放。参数可通过系统属性 {@code server.headerTimeoutMs}、
+ * {@code server.transferGraceMs}、{@code server.minTransferRate}（字节/秒）调整。
+ */
+final class ConnectionTimeouts {
+    // 请求头读取时限（自收到第一个字节起）
+    static final long HEADER_TIMEOUT_MS = Long.getLong("server.headerTimeoutMs", 10_000);
+    // 请求体读取、响应写出在按速率计算的时限之外额外允许的时间
+    static final long TRANSFER_GRACE_MS = Long.getLong("server.transferGraceMs", 10_000);
+    // 最低传输速率（字节/秒）
+    static final long MIN_TRANSFER_RATE = Long.getLong("server.minTransferRate", 8 * 1024);
+
+    // 超时阶段名（用于日志）
+    static final String HEADER_READ = "header read";
+    static final String BODY_READ = "body read";
+    static final String RESPONSE_WRITE = "response write";
+    static final String IDLE = "idle";
+
+    // 所有连接共用的时间轮：刻度 100ms，512 个槽（一圈约 51 秒）
+    static final TimerWheel WHEEL = new TimerWheel("connection-timeouts", 100, 512);
+
+    private ConnectionTimeouts() {
+    }
+
+    // 传输 bytes 字节允许的最长时间
+    static long transferTimeoutMillis(long bytes) {
+        return TRANSFER_GRACE_MS + bytes * 1000 / MIN_TRANSFER_RATE;
+    }
+}
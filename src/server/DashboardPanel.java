@@ -0,0 +1,334 @@
+package server;
+
+import javax.swing.*;
+import java.awt.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 服务器 GUI 的运行监控面板：吞吐量、处理延迟 p50/p99、连接数、队列长度、静态缓存命中率、堆内存与 GC 占比，
+ * 每项显示当前值和最近 {@link #HISTORY} 个采样的走势小图
+ * <p>
+ * 采样在后台线程中按固定间隔进行（默认 1 秒，系统属性 {@code server.dashboardIntervalMs}），
+ * 延迟与命中率取两次采样之间的增量。采样结果先暂存，事件分发线程上最多只排队一个刷新任务，
+ * 一次取出全部暂存的采样并重绘，界面卡顿时也不会积压刷新任务。
+ */
+final class DashboardPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    static final long SAMPLE_INTERVAL_MS = Long.getLong("server.dashboardIntervalMs", 1000);
+    // 每个走势图保留的采样数
+    static final int HISTORY = 120;
+
+    private static final Color PRIMARY = new Color(33, 150, 243);
+    private static final Color SECONDARY = new Color(255, 152, 0);
+
+    private final Tile throughputTile = new Tile("吞吐量", 0, PRIMARY);
+    private final Tile latencyTile = new Tile("处理延迟 p50 / p99", 0, PRIMARY, SECONDARY);
+    private final Tile connectionTile = new Tile("连接数", 0, PRIMARY);
+    private final Tile queueTile = new Tile("等待队列", 0, PRIMARY);
+    private final Tile cacheTile = new Tile("静态缓存命中率", 100, PRIMARY);
+    private final Tile memoryTile = new Tile("堆内存 / GC 占比", 100, PRIMARY, SECONDARY);
+
+    // 等待刷新到界面的采样（采样线程写入，事件分发线程取出）
+    private final ArrayDeque<Sample> pending = new ArrayDeque<>();
+    // 事件分发线程上是否已有排队的刷新任务
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    // 上一次采样的累计值（仅采样线程访问）
+    private long lastNanos;
+    private long lastRequests;
+    private LatencyHistogram.Snapshot lastLatency;
+    private long lastHits;
+    private long lastMisses;
+    private long lastGcMillis;
+
+    DashboardPanel() {
+        super(new GridLayout(2, 3, 8, 8));
+        setBorder(BorderFactory.createTitledBorder("运行监控"));
+        add(throughputTile);
+        add(latencyTile);
+        add(connectionTile);
+        add(queueTile);
+        add(cacheTile);
+        add(memoryTile);
+    }
+
+    /**
+     * 启动后台采样线程
+     */
+    void start() {
+        sample(); // 记录起始累计值
+        Thread sampler = new Thread(this::runSampler, "dashboard-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    private void runSampler() {
+        long interval = TimeUnit.MILLISECONDS.toNanos(Math.max(100, SAMPLE_INTERVAL_MS));
+        long next = System.nanoTime() + interval;
+        while (true) {
+            // 按固定节拍采样，不随单次采样耗时漂移
+            long delay = next - System.nanoTime();
+            if (delay > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            next += interval;
+            publish(sample());
+        }
+    }
+
+    private Sample sample() {
+        long now = System.nanoTime();
+        double seconds = (now - lastNanos) / 1e9;
+        Sample s = new Sample();
+
+        long requests = ServerMetrics.requestCount();
+        LatencyHistogram.Snapshot latency = ServerMetrics.HANDLER.snapshot();
+        if (lastLatency != null) {
+            s.requestsPerSecond = (requests - lastRequests) / seconds;
+            LatencyHistogram.Snapshot window = latency.minus(lastLatency);
+            if (window.count > 0) {
+                s.p50Millis = window.valueAtQuantile(0.5) / 1e6;
+                s.p99Millis = window.valueAtQuantile(0.99) / 1e6;
+            }
+        }
+
+        s.activeConnections = HttpServer.getActiveConnections();
+        s.totalConnections = HttpServer.getConnectionCount();
+        s.queueDepth = HttpServer.getQueueDepth();
+
+        StaticResourceCache cache = HttpServer.getStaticCache();
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+        long lookups = (hits - lastHits) + (misses - lastMisses);
+        if (lookups > 0) {
+            s.cacheHitPercent = 100.0 * (hits - lastHits) / lookups;
+        }
+
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        long heapMax = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+        s.heapUsedBytes = heap.getUsed();
+        s.heapMaxBytes = heapMax;
+        s.heapPercent = 100.0 * heap.getUsed() / heapMax;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            gcMillis += Math.max(0, collector.getCollectionTime());
+        }
+        if (lastLatency != null) {
+            s.gcPercent = Math.min(100, (gcMillis - lastGcMillis) / (seconds * 10));
+        }
+
+        lastNanos = now;
+        lastRequests = requests;
+        lastLatency = latency;
+        lastHits = hits;
+        lastMisses = misses;
+        lastGcMillis = gcMillis;
+        return s;
+    }
+
+    // 暂存采样；只有没有排队中的刷新任务时才向事件分发线程提交一个
+    private void publish(Sample sample) {
+        synchronized (pending) {
+            pending.addLast(sample);
+            if (pending.size() > HISTORY) {
+                pending.pollFirst();
+            }
+        }
+        if (refreshScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::refresh);
+        }
+    }
+
+    // 事件分发线程：取出全部暂存的采样写入走势图，按最新采样更新数值
+    private void refresh() {
+        refreshScheduled.set(false);
+        Sample[] samples;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            samples = pending.toArray(new Sample[0]);
+            pending.clear();
+        }
+        for (Sample s : samples) {
+            throughputTile.chart.add(s.requestsPerSecond);
+            latencyTile.chart.add(s.p50Millis, s.p99Millis);
+            connectionTile.chart.add(s.activeConnections);
+            queueTile.chart.add(s.queueDepth);
+            cacheTile.chart.add(s.cacheHitPercent);
+            memoryTile.chart.add(s.heapPercent, s.gcPercent);
+        }
+
+        Sample s = samples[samples.length - 1];
+        throughputTile.setValue(String.format("%.0f 请求/秒", s.requestsPerSecond));
+        latencyTile.setValue(Double.isNaN(s.p50Millis) ? "无请求"
+                : String.format("%.2f / %.2f ms", s.p50Millis, s.p99Millis));
+        connectionTile.setValue("活跃 " + s.activeConnections + " / 累计 " + s.totalConnections);
+        queueTile.setValue(s.queueDepth + " 个等待");
+        cacheTile.setValue(Double.isNaN(s.cacheHitPercent) ? "无访问"
+                : String.format("%.1f%%", s.cacheHitPercent));
+        memoryTile.setValue(String.format("%d / %d MB, GC %.1f%%",
+                s.heapUsedBytes >> 20, s.heapMaxBytes >> 20, s.gcPercent));
+    }
+
+    /**
+     * 一次采样结果（NaN 表示该采样间隔内没有数据）
+     */
+    private static final class Sample {
+        double requestsPerSecond;
+        double p50Millis = Double.NaN;
+        double p99Millis = Double.NaN;
+        int activeConnections;
+        int totalConnections;
+        int queueDepth;
+        double cacheHitPercent = Double.NaN;
+        long heapUsedBytes;
+        long heapMaxBytes;
+        double heapPercent;
+        double gcPercent;
+    }
+
+    /**
+     * 一个监控项：标题、当前值与走势图
+     */
+    private static final class Tile extends JPanel {
+        private static final long serialVersionUID = 1L;
+
+        final Sparkline chart;
+        private final JLabel valueLabel = new JLabel("-");
+
+        Tile(String title, double fixedMax, Color... colors) {
+            super(new BorderLayout(0, 2));
+            chart = new Sparkline(HISTORY, fixedMax, colors);
+            JLabel titleLabel = new JLabel(title);
+            titleLabel.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+            titleLabel.setForeground(Color.GRAY);
+            valueLabel.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 13));
+
+            JPanel header = new JPanel(new BorderLayout());
+            header.setOpaque(false);
+            header.add(titleLabel, BorderLayout.NORTH);
+            header.add(valueLabel, BorderLayout.SOUTH);
+            add(header, BorderLayout.NORTH);
+            add(chart, BorderLayout.CENTER);
+        }
+
+        void setValue(String text) {
+            valueLabel.setText(text);
+        }
+    }
+
+    /**
+     * 走势小图：定长环形数组保存最近的采样，可同时画多条线（共用纵轴），NaN 处断开
+     */
+    private static final class Sparkline extends JComponent {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] values;
+        private final Color[] colors;
+        // 大于 0 时纵轴固定为 [0, fixedMax]，否则按窗口内最大值缩放
+        private final double fixedMax;
+        private final int[] xs;
+        private final int[] ys;
+        private int head;
+        private int size;
+
+        Sparkline(int capacity, double fixedMax, Color... colors) {
+            this.values = new double[colors.length][capacity];
+            this.colors = colors;
+            this.fixedMax = fixedMax;
+            this.xs = new int[capacity];
+            this.ys = new int[capacity];
+            setPreferredSize(new Dimension(200, 48));
+        }
+
+        // 追加一个采样（每条线一个值），并请求重绘
+        void add(double... sample) {
+            for (int i = 0; i < values.length; i++) {
+                values[i][head] = sample[i];
+            }
+            head = (head + 1) % xs.length;
+            size = Math.min(size + 1, xs.length);
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            int w = getWidth() - 1;
+            int h = getHeight() - 1;
+            g.setColor(new Color(250, 250, 250));
+            g.fillRect(0, 0, w, h);
+            g.setColor(new Color(224, 224, 224));
+            g.drawRect(0, 0, w, h);
+            if (size < 2) {
+                return;
+            }
+
+            double max = fixedMax;
+            if (max <= 0) {
+                for (double[] line : values) {
+                    for (int i = 0; i < size; i++) {
+                        double v = line[slot(i)];
+                        if (v > max) {
+                            max = v;
+                        }
+                    }
+                }
+                if (max <= 0) {
+                    max = 1;
+                }
+            }
+
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            double dx = (double) (w - 2) / (xs.length - 1);
+            // 最新的采样靠右对齐
+            int offset = xs.length - size;
+            for (int line = 0; line < values.length; line++) {
+                g2.setColor(colors[line]);
+                int n = 0;
+                for (int i = 0; i < size; i++) {
+                    double v = values[line][slot(i)];
+                    if (Double.isNaN(v)) {
+                        drawRun(g2, n);
+                        n = 0;
+                        continue;
+                    }
+                    xs[n] = 1 + (int) Math.round((offset + i) * dx);
+                    ys[n] = h - 1 - (int) Math.round(Math.min(v, max) / max * (h - 2));
+                    n++;
+                }
+                drawRun(g2, n);
+            }
+            g2.dispose();
+        }
+
+        private void drawRun(Graphics2D g2, int n) {
+            if (n == 1) {
+                g2.fillRect(xs[0], ys[0], 1, 1);
+            } else if (n > 1) {
+                g2.drawPolyline(xs, ys, n);
+            }
+        }
+
+        // 第 i 个（从旧到新）采样所在的数组下标
+        private int slot(int i) {
+            return (head - size + i + xs.length) % xs.length;
+        }
+    }
+}
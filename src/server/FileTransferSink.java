@@ -0,0 +1,28 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 支持零拷贝发送文件区间的响应输出
+ * <p>
+ * NIO 引擎的响应流实现该接口，使静态文件直接由事件循环通过
+ * {@link FileChannel#transferTo} 写入套接字，已缓存的内容直接写出缓冲区，
+ * 都不经过工作线程的内存拷贝。
+ */
+interface FileTransferSink {
+    /**
+     * 将文件区间排入响应队列，位于此前写入的数据之后
+     *
+     * @param file     已打开的文件通道，调用后所有权转移给接收方，由其负责关闭
+     * @param position 起始偏移
+     * @param count    发送字节数
+     */
+    void transferFile(FileChannel file, long position, long count) throws IOException;
+
+    /**
+     * 将缓冲区内容排入响应队列（不复制），调用方不得再修改该缓冲区的位置与内容
+     */
+    void transferBuffer(ByteBuffer data) throws IOException;
+}
@@ -0,0 +1,51 @@
+package server;
+
+/**
+ * 十六进制编解码（小写），直接读写调用方提供的数组或 StringBuilder，不产生中间对象
+ */
+final class HexCodec {
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private HexCodec() {
+    }
+
+    // 把 src[off, off + len) 编码后追加到 out
+    static StringBuilder append(StringBuilder out, byte[] src, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            out.append(DIGITS[(src[i] >> 4) & 0xf]).append(DIGITS[src[i] & 0xf]);
+        }
+        return out;
+    }
+
+    static String encode(byte[] src) {
+        return append(new StringBuilder(src.length * 2), src, 0, src.length).toString();
+    }
+
+    /**
+     * 把 s[start, end) 解码到 dst（从下标 0 开始）
+     *
+     * @return 长度恰好为 dst 的两倍且全部为十六进制字符时返回 true
+     */
+    static boolean decode(CharSequence s, int start, int end, byte[] dst) {
+        if (end - start != dst.length * 2) {
+            return false;
+        }
+        for (int i = 0; i < dst.length; i++) {
+            int hi = digit(s.charAt(start + 2 * i));
+            int lo = digit(s.charAt(start + 2 * i + 1));
+            if (hi < 0 || lo < 0) {
+                return false;
+            }
+            dst[i] = (byte) ((hi << 4) | lo);
+        }
+        return true;
+    }
+
+    // 单个十六进制字符的值，不是十六进制字符（含 -1）返回 -1
+    static int digit(int c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+}
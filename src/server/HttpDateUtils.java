@@ -0,0 +1,51 @@
+package server;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.util.Locale;
+
+/**
+ * HTTP 日期（RFC 7231 7.1.1.1）的格式化与解析
+ */
+public class HttpDateUtils {
+    // RFC 7231 首选格式：Sun, 06 Nov 1994 08:49:37 GMT
+    private static final DateTimeFormatter IMF_FIXDATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+    // 已废弃但仍需接受的格式：Sunday, 06-Nov-94 08:49:37 GMT
+    // 两位年份按 1970 年起的百年窗口解释
+    private static final DateTimeFormatter RFC_850 = new DateTimeFormatterBuilder()
+            .appendPattern("EEEE, dd-MMM-")
+            .appendValueReduced(ChronoField.YEAR, 2, 2, 1970)
+            .appendPattern(" HH:mm:ss 'GMT'")
+            .toFormatter(Locale.US)
+            .withZone(ZoneOffset.UTC);
+    // C 语言 asctime() 格式：Sun Nov  6 08:49:37 1994
+    private static final DateTimeFormatter ASCTIME =
+            DateTimeFormatter.ofPattern("EEE MMM ppd HH:mm:ss yyyy", Locale.US).withZone(ZoneOffset.UTC);
+
+    // 毫秒时间戳格式化为 HTTP 日期（精度为秒）
+    public static String format(long epochMillis) {
+        return IMF_FIXDATE.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    // 解析 HTTP 日期，返回毫秒时间戳；无法解析返回 -1
+    public static long parse(String value) {
+        if (value == null) {
+            return -1;
+        }
+        String text = value.trim();
+        for (DateTimeFormatter formatter : new DateTimeFormatter[]{IMF_FIXDATE, RFC_850, ASCTIME}) {
+            try {
+                return ZonedDateTime.parse(text, formatter).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+                // 尝试下一种格式
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,408 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 可复用的增量式 HTTP 请求头解析器（每个连接一个实例）
+ * <p>
+ * 直接在读缓冲区的字节上扫描请求行与请求头，数据不完整时记住已扫描位置，
+ * 下次收到更多数据后继续解析。请求方法与常用请求头在解析时按字节识别，
+ * 请求头的值只记录偏移，调用 {@link #header} 时才解码为字符串。
+ * 稳态下解析一个请求不产生任何对象分配。
+ */
+final class HttpRequestParser {
+    // 请求行最大字节数，超出返回 414
+    static final int MAX_REQUEST_LINE = 8 * 1024;
+    // 请求头（含请求行）最大字节数，超出返回 431
+    static final int MAX_HEADER_BYTES = 16 * 1024;
+    // 请求头最大个数，超出返回 431
+    static final int MAX_HEADERS = 100;
+
+    private static final int STATE_REQUEST_LINE = 0;
+    private static final int STATE_HEADERS = 1;
+    private static final int STATE_COMPLETE = 2;
+
+    /**
+     * 请求方法
+     */
+    enum Method {
+        GET, HEAD, POST, PUT, DELETE, OPTIONS, PATCH, TRACE, CONNECT,
+        // 其他扩展方法，名称通过 {@link #methodName()} 获取
+        OTHER;
+
+        private final byte[] bytes = name().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 解析时直接识别的常用请求头
+     */
+    enum Header {
+        HOST("host"),
+        CONNECTION("connection"),
+        CONTENT_LENGTH("content-length"),
+        CONTENT_TYPE("content-type"),
+        TRANSFER_ENCODING("transfer-encoding"),
+        ACCEPT_ENCODING("accept-encoding"),
+        IF_MODIFIED_SINCE("if-modified-since"),
+        IF_NONE_MATCH("if-none-match"),
+        IF_RANGE("if-range"),
+        RANGE("range"),
+        EXPECT("expect"),
+        COOKIE("cookie"),
+        USER_AGENT("user-agent");
+
+        private final byte[] lowerName;
+
+        Header(String lowerName) {
+            this.lowerName = lowerName.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static final Method[] METHODS = Method.values();
+    private static final Header[] HEADERS = Header.values();
+    private static final byte[] HTTP_1_1 = "HTTP/1.1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HTTP_1_0 = "HTTP/1.0".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * 请求格式错误或超出限制，携带应返回的状态码
+     */
+    static final class ParseException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int statusCode;
+        final String statusMsg;
+
+        ParseException(int statusCode, String statusMsg) {
+            super(statusCode + " " + statusMsg);
+            this.statusCode = statusCode;
+            this.statusMsg = statusMsg;
+        }
+    }
+
+    // 解析进度（偏移均相对于当前请求在缓冲区中的起点）
+    private int state = STATE_REQUEST_LINE;
+    private int scanned = 0;
+    private int lineStart = 0;
+
+    // 请求头原始字节（解析完成后从读缓冲区复制，读缓冲区随后可被复用）
+    private byte[] head = new byte[1024];
+    private int headLength = 0;
+
+    private Method method;
+    private int methodEnd;
+    private int targetStart;
+    private int targetEnd;
+    private int versionStart;
+    private int versionEnd;
+
+    private int headerCount = 0;
+    private final Header[] headerIds = new Header[MAX_HEADERS];
+    private final int[] nameStart = new int[MAX_HEADERS];
+    private final int[] nameEnd = new int[MAX_HEADERS];
+    private final int[] valueStart = new int[MAX_HEADERS];
+    private final int[] valueEnd = new int[MAX_HEADERS];
+    private long contentLength = -1;
+
+    // 按需解码后的字符串
+    private String path;
+    private String protocol;
+
+    // 开始解析下一个请求（保留已分配的数组）
+    void reset() {
+        state = STATE_REQUEST_LINE;
+        scanned = 0;
+        lineStart = 0;
+        headLength = 0;
+        method = null;
+        headerCount = 0;
+        contentLength = -1;
+        path = null;
+        protocol = null;
+    }
+
+    // 是否尚未收到当前请求的任何字节（用于区分空闲超时与读到一半超时）
+    boolean isIdle() {
+        return state == STATE_REQUEST_LINE && scanned == 0;
+    }
+
+    /**
+     * 从缓冲区（读模式、基于数组）解析请求头
+     * <p>
+     * 数据不完整时不移动缓冲区位置，返回 false；解析完成时把位置移到请求头之后
+     * （即请求体起点）并返回 true。两次调用之间缓冲区可以被 compact 或扩容，
+     * 只要未消费的数据内容不变。
+     */
+    boolean parse(ByteBuffer buf) throws ParseException {
+        if (state == STATE_COMPLETE) {
+            return true;
+        }
+        byte[] a = buf.array();
+        // 请求之间允许有多余的空行
+        if (isIdle()) {
+            int p = buf.position();
+            while (p < buf.limit() && (a[buf.arrayOffset() + p] == '\r' || a[buf.arrayOffset() + p] == '\n')) {
+                p++;
+            }
+            buf.position(p);
+        }
+        int base = buf.arrayOffset() + buf.position();
+        int available = buf.remaining();
+
+        while (true) {
+            int lf = -1;
+            for (int i = scanned; i < available; i++) {
+                if (a[base + i] == '\n') {
+                    lf = i;
+                    break;
+                }
+            }
+            if (lf < 0) {
+                scanned = available;
+                checkLimits(available);
+                return false;
+            }
+            int contentEnd = lf > lineStart && a[base + lf - 1] == '\r' ? lf - 1 : lf;
+            scanned = lf + 1;
+            checkLimits(lf);
+
+            if (state == STATE_REQUEST_LINE) {
+                parseRequestLine(a, base, lineStart, contentEnd);
+                state = STATE_HEADERS;
+            } else if (contentEnd == lineStart) {
+                // 空行：请求头结束
+                complete(a, base);
+                buf.position(buf.position() + headLength);
+                return true;
+            } else {
+                parseHeaderLine(a, base, lineStart, contentEnd);
+            }
+            lineStart = scanned;
+        }
+    }
+
+    private void checkLimits(int length) throws ParseException {
+        if (state == STATE_REQUEST_LINE && length - lineStart > MAX_REQUEST_LINE) {
+            throw new ParseException(414, "URI Too Long");
+        }
+        if (length > MAX_HEADER_BYTES) {
+            throw new ParseException(431, "Request Header Fields Too Large");
+        }
+    }
+
+    // 请求行：METHOD SP request-target SP HTTP-version
+    private void parseRequestLine(byte[] a, int base, int start, int end) throws ParseException {
+        int sp1 = indexOf(a, base, start, end, (byte) ' ');
+        int sp2 = sp1 < 0 ? -1 : indexOf(a, base, sp1 + 1, end, (byte) ' ');
+        if (sp1 <= start || sp2 <= sp1 + 1 || sp2 + 1 >= end) {
+            throw new ParseException(400, "Bad Request");
+        }
+        methodEnd = sp1;
+        method = Method.OTHER;
+        for (Method m : METHODS) {
+            if (m != Method.OTHER && regionEquals(a, base + start, sp1 - start, m.bytes, false)) {
+                method = m;
+                break;
+            }
+        }
+        targetStart = sp1 + 1;
+        targetEnd = sp2;
+        versionStart = sp2 + 1;
+        versionEnd = end;
+        if (!regionStartsWith(a, base + versionStart, versionEnd - versionStart, "HTTP/")) {
+            throw new ParseException(400, "Bad Request");
+        }
+    }
+
+    // 请求头：field-name ":" OWS field-value OWS
+    private void parseHeaderLine(byte[] a, int base, int start, int end) throws ParseException {
+        if (a[base + start] == ' ' || a[base + start] == '\t') {
+            // 已废弃的多行折叠格式
+            throw new ParseException(400, "Bad Request");
+        }
+        int colon = indexOf(a, base, start, end, (byte) ':');
+        if (colon <= start || a[base + colon - 1] == ' ' || a[base + colon - 1] == '\t') {
+            throw new ParseException(400, "Bad Request");
+        }
+        if (headerCount == MAX_HEADERS) {
+            throw new ParseException(431, "Request Header Fields Too Large");
+        }
+        int vs = colon + 1;
+        int ve = end;
+        while (vs < ve && (a[base + vs] == ' ' || a[base + vs] == '\t')) vs++;
+        while (ve > vs && (a[base + ve - 1] == ' ' || a[base + ve - 1] == '\t')) ve--;
+
+        Header id = null;
+        for (Header h : HEADERS) {
+            if (regionEquals(a, base + start, colon - start, h.lowerName, true)) {
+                id = h;
+                break;
+            }
+        }
+        int i = headerCount++;
+        headerIds[i] = id;
+        nameStart[i] = start;
+        nameEnd[i] = colon;
+        valueStart[i] = vs;
+        valueEnd[i] = ve;
+
+        if (id == Header.CONTENT_LENGTH) {
+            long value = parseDigits(a, base + vs, ve - vs);
+            // 多个不一致的 Content-Length 可被用于请求走私
+            if (value < 0 || (contentLength >= 0 && contentLength != value)) {
+                throw new ParseException(400, "Bad Request");
+            }
+            contentLength = value;
+        }
+    }
+
+    private void complete(byte[] a, int base) throws ParseException {
+        headLength = scanned;
+        if (head.length < headLength) {
+            head = new byte[Math.max(headLength, Math.min(head.length * 2, MAX_HEADER_BYTES))];
+        }
+        System.arraycopy(a, base, head, 0, headLength);
+        state = STATE_COMPLETE;
+        if (indexOfHeader(Header.TRANSFER_ENCODING) >= 0) {
+            // 暂不支持分块编码的请求体
+            throw new ParseException(501, "Not Implemented");
+        }
+    }
+
+    Method method() {
+        return method;
+    }
+
+    // 方法名：标准方法直接返回常量，不分配
+    String methodName() {
+        return method != Method.OTHER ? method.name()
+                : new String(head, 0, methodEnd, StandardCharsets.ISO_8859_1);
+    }
+
+    String path() {
+        if (path == null) {
+            path = new String(head, targetStart, targetEnd - targetStart, StandardCharsets.ISO_8859_1);
+        }
+        return path;
+    }
+
+    String protocol() {
+        if (protocol == null) {
+            int len = versionEnd - versionStart;
+            if (regionEquals(head, versionStart, len, HTTP_1_1, false)) {
+                protocol = "HTTP/1.1";
+            } else if (regionEquals(head, versionStart, len, HTTP_1_0, false)) {
+                protocol = "HTTP/1.0";
+            } else {
+                protocol = new String(head, versionStart, len, StandardCharsets.ISO_8859_1);
+            }
+        }
+        return protocol;
+    }
+
+    boolean isHttp10() {
+        return regionEquals(head, versionStart, versionEnd - versionStart, HTTP_1_0, false);
+    }
+
+    // 请求体长度，没有 Content-Length 时为 -1
+    long contentLength() {
+        return contentLength;
+    }
+
+    // 常用请求头的值（首次出现），不存在返回 null
+    String header(Header name) {
+        int i = indexOfHeader(name);
+        return i < 0 ? null : value(i);
+    }
+
+    // 任意请求头的值（名称需为小写），不存在返回 null
+    String header(String lowerName) {
+        byte[] name = lowerName.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < headerCount; i++) {
+            if (regionEquals(head, nameStart[i], nameEnd[i] - nameStart[i], name, true)) {
+                return value(i);
+            }
+        }
+        return null;
+    }
+
+    // 请求头值中是否包含某个逗号分隔的记号（忽略大小写），如 Connection: keep-alive
+    boolean headerContainsToken(Header name, String token) {
+        int i = indexOfHeader(name);
+        if (i < 0) return false;
+        int start = valueStart[i];
+        int end = valueEnd[i];
+        int p = start;
+        while (p < end) {
+            while (p < end && (head[p] == ' ' || head[p] == '\t' || head[p] == ',')) p++;
+            int tokenStart = p;
+            while (p < end && head[p] != ',') p++;
+            int tokenEnd = p;
+            while (tokenEnd > tokenStart && (head[tokenEnd - 1] == ' ' || head[tokenEnd - 1] == '\t')) tokenEnd--;
+            if (tokenEnd - tokenStart == token.length()) {
+                boolean match = true;
+                for (int k = 0; k < token.length(); k++) {
+                    if (toLower(head[tokenStart + k]) != Character.toLowerCase(token.charAt(k))) {
+                        match = false;
+                        break;
+                    }
+                }
+                if (match) return true;
+            }
+        }
+        return false;
+    }
+
+    private String value(int i) {
+        return new String(head, valueStart[i], valueEnd[i] - valueStart[i], StandardCharsets.ISO_8859_1);
+    }
+
+    private int indexOfHeader(Header name) {
+        for (int i = 0; i < headerCount; i++) {
+            if (headerIds[i] == name) return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] a, int base, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (a[base + i] == b) return i;
+        }
+        return -1;
+    }
+
+    // 比较字节区间与给定字节串；ignoreCase 时 expected 须为小写
+    private static boolean regionEquals(byte[] a, int offset, int length, byte[] expected, boolean ignoreCase) {
+        if (length != expected.length) return false;
+        for (int i = 0; i < length; i++) {
+            byte b = ignoreCase ? toLower(a[offset + i]) : a[offset + i];
+            if (b != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean regionStartsWith(byte[] a, int offset, int length, String prefix) {
+        if (length < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (a[offset + i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static byte toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    // 解析非负十进制整数，格式错误或溢出返回 -1
+    private static long parseDigits(byte[] a, int offset, int length) {
+        if (length == 0 || length > 18) return -1;
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = a[offset + i];
+            if (b < '0' || b > '9') return -1;
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,147 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 可复用的响应头构建器（每个连接一个实例）
+ * <p>
+ * 状态行按协议与状态码、Content-Type 行按 MIME 类型缓存为字节模板，
+ * 响应头直接拼接到连接内复用的字节数组中，Content-Length 等数值原地写成十进制字节，
+ * 不再经过 StringBuilder 与字符串编码。{@link #finish()} 返回的缓冲区在下一次
+ * {@link #status} 之前有效，调用方需在此之前写出。
+ */
+final class HttpResponseWriter {
+    // 常用响应头名（含冒号与空格）
+    static final byte[] CONTENT_TYPE = name("Content-Type");
+    static final byte[] LOCATION = name("Location");
+    static final byte[] LAST_MODIFIED = name("Last-Modified");
+    static final byte[] ETAG = name("ETag");
+    static final byte[] ACCEPT_RANGES = name("Accept-Ranges");
+    static final byte[] CONTENT_RANGE = name("Content-Range");
+    static final byte[] RETRY_AFTER = name("Retry-After");
+    static final byte[] SET_COOKIE = name("Set-Cookie");
+    static final byte[] TRANSFER_ENCODING = name("Transfer-Encoding");
+
+    // 中间响应：客户端可以继续发送请求体（Expect: 100-continue）
+    static final byte[] CONTINUE = ascii("HTTP/1.1 100 Continue\r\n\r\n");
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] CONTENT_LENGTH = name("Content-Length");
+    private static final byte[] CONNECTION_CLOSE = ascii("Connection: close\r\n");
+    private static final byte[] KEEP_ALIVE = ascii("Connection: keep-alive\r\nKeep-Alive: timeout="
+            + RequestHandler.KEEP_ALIVE_TIMEOUT_MS / 1000 + ", max=");
+
+    // 状态行模板，按状态码下标懒加载（同一状态码的原因短语固定，重复生成无副作用）；
+    // 多个请求线程并发填充，用原子数组保证其他线程读到的是完整的字节数组
+    private static final AtomicReferenceArray<byte[]> STATUS_LINES_11 = new AtomicReferenceArray<>(600);
+    private static final AtomicReferenceArray<byte[]> STATUS_LINES_10 = new AtomicReferenceArray<>(600);
+    // Content-Type 行模板，按 MIME 类型缓存
+    private static final ConcurrentHashMap<String, byte[]> CONTENT_TYPES = new ConcurrentHashMap<>();
+
+    private byte[] buf = new byte[512];
+    private int length = 0;
+
+    // 开始一个新响应：写入状态行（丢弃上一个响应头）
+    HttpResponseWriter status(String protocol, int statusCode, String statusMsg) {
+        length = 0;
+        AtomicReferenceArray<byte[]> table = "HTTP/1.1".equals(protocol) ? STATUS_LINES_11
+                : "HTTP/1.0".equals(protocol) ? STATUS_LINES_10 : null;
+        if (table == null || statusCode < 100 || statusCode >= table.length()) {
+            return raw(ascii(protocol + " " + statusCode + " " + statusMsg + "\r\n"));
+        }
+        byte[] line = table.get(statusCode);
+        if (line == null) {
+            line = ascii(protocol + " " + statusCode + " " + statusMsg + "\r\n");
+            table.compareAndSet(statusCode, null, line);
+        }
+        return raw(line);
+    }
+
+    // 长连接相关响应头
+    HttpResponseWriter connection(boolean keepAlive, int remainingRequests) {
+        if (!keepAlive) {
+            return raw(CONNECTION_CLOSE);
+        }
+        raw(KEEP_ALIVE);
+        number(remainingRequests);
+        return raw(CRLF);
+    }
+
+    HttpResponseWriter contentType(String mimeType) {
+        return raw(CONTENT_TYPES.computeIfAbsent(mimeType, m -> ascii("Content-Type: " + m + "\r\n")));
+    }
+
+    HttpResponseWriter contentLength(long contentLength) {
+        raw(CONTENT_LENGTH);
+        number(contentLength);
+        return raw(CRLF);
+    }
+
+    // 任意响应头，值按 ISO-8859-1 逐字符写入（非 Latin-1 字符写为 '?'）
+    HttpResponseWriter header(byte[] name, String value) {
+        raw(name);
+        ensure(value.length() + 2);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            buf[length++] = c <= 0xFF ? (byte) c : (byte) '?';
+        }
+        return raw(CRLF);
+    }
+
+    HttpResponseWriter header(byte[] name, long value) {
+        raw(name);
+        number(value);
+        return raw(CRLF);
+    }
+
+    // 追加预先序列化的响应头（每行以 CRLF 结尾）
+    HttpResponseWriter raw(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, length, bytes.length);
+        length += bytes.length;
+        return this;
+    }
+
+    // 追加结尾空行，返回完整响应头
+    ByteBuffer finish() {
+        raw(CRLF);
+        return ByteBuffer.wrap(buf, 0, length);
+    }
+
+    // 非负整数直接写成十进制 ASCII
+    private void number(long value) {
+        if (value < 0) {
+            raw(ascii(Long.toString(value)));
+            return;
+        }
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        ensure(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buf.length) {
+            byte[] bigger = new byte[Math.max(buf.length * 2, length + extra)];
+            System.arraycopy(buf, 0, bigger, 0, length);
+            buf = bigger;
+        }
+    }
+
+    private static byte[] name(String headerName) {
+        return ascii(headerName + ": ");
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
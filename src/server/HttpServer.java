@@ -1,86 +1,181 @@
 package server;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class HttpServer {
     private static final int DEFAULT_PORT = 8007;
     private static final int DEFAULT_MAX_THREADS = 50;
+
+    /**
+     * 服务器 I/O 模型
+     */
+    public enum IoMode {
+        // 阻塞 I/O：每个连接占用线程池中的一个线程
+        BIO,
+        // 非阻塞 I/O：少量事件循环线程持有所有连接，请求交给有界工作线程池处理
+        NIO,
+        // 阻塞 I/O + 虚拟线程：每个连接一个虚拟线程，并发连接数由准入控制的全局上限 AdmissionControl.MAX_CONNECTIONS 限制（需 JDK 21+）
+        VIRTUAL
+    }
+
+    // BIO 模式下每个线程允许排队等待的连接数，队列满时新连接直接返回 503
+    private static final int BIO_QUEUE_PER_THREAD = 2;
     
     private static ServerSocket serverSocket;
     private static ExecutorService threadPool;
-    private static final UserService userService = new UserService();
+    private static NioHttpServer nioServer;
+    // 连接准入控制：单 IP 新建连接速率与全局连接数（所有 I/O 模型共用）
+    private static final AdmissionControl admission = AdmissionControl.createDefault();
+    // 访问日志（后台线程写出；通过系统属性关闭时为 null）
+    private static final AccessLog accessLog = openAccessLog();
+    private static AutoCloseable pinnedMonitor;
+    // 用户数据目录（预写日志与快照）
+    private static final File USER_DATA_DIR = new File("data");
+    private static final UserService userService = openUserService();
+    // 静态资源缓存：总预算 64MB，单个文件超过 1MB 只缓存元数据
+    private static final long STATIC_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final int STATIC_CACHE_MAX_ENTRY_BYTES = 1024 * 1024;
+    private static final StaticResourceCache staticCache = new StaticResourceCache(
+            new File("static"), STATIC_CACHE_BYTES, STATIC_CACHE_MAX_ENTRY_BYTES, false);
     private static final AtomicInteger connectionCount = new AtomicInteger(0);
     private static final AtomicBoolean running = new AtomicBoolean(false);
-    private static ServerGUI gui;
     private static int currentPort;
     private static int currentMaxThreads;
+    private static IoMode currentMode = IoMode.BIO;
 
     public static void main(String[] args) {
-        // 命令行模式启动
-        startServer(DEFAULT_PORT, DEFAULT_MAX_THREADS);
+        // 命令行模式启动，可选参数指定 I/O 模型：java server.HttpServer nio
+        IoMode mode = IoMode.BIO;
+        if (args.length > 0) {
+            try {
+                mode = IoMode.valueOf(args[0].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                Log.error("Unknown I/O mode: " + args[0] + ", falling back to BIO");
+            }
+        }
+        startServer(DEFAULT_PORT, DEFAULT_MAX_THREADS, mode);
     }
     
-    public static void setGUI(ServerGUI gui) {
-        HttpServer.gui = gui;
+    // 打开持久化用户服务；数据目录不可用时退回纯内存模式
+    private static UserService openUserService() {
+        try {
+            UserService service = new UserService(USER_DATA_DIR);
+            // 进程退出时写出剩余日志并生成快照，加快下次启动
+            Runtime.getRuntime().addShutdownHook(new Thread(service::close, "user-store-close"));
+            return service;
+        } catch (IOException e) {
+            Log.error("Cannot open user data in " + USER_DATA_DIR + ": " + e.getMessage()
+                    + ", users will not be persisted");
+            return new UserService();
+        }
     }
-    
+
+    private static AccessLog openAccessLog() {
+        AccessLog log = AccessLog.createDefault();
+        if (log != null) {
+            // 进程退出时写出已入队的记录
+            Runtime.getRuntime().addShutdownHook(new Thread(log::close, "access-log-close"));
+        }
+        return log;
+    }
+
     public static void startServer(int port, int maxThreads) {
+        startServer(port, maxThreads, IoMode.BIO);
+    }
+
+    public static void startServer(int port, int maxThreads, IoMode mode) {
         if (running.get()) {
-            logError("服务器已在运行中");
+            Log.error("服务器已在运行中");
             return;
         }
         
         currentPort = port;
         currentMaxThreads = maxThreads;
-        threadPool = Executors.newFixedThreadPool(maxThreads);
+        currentMode = mode;
+        if (mode == IoMode.NIO) {
+            startNioServer(port, maxThreads);
+            return;
+        }
+        if (mode == IoMode.VIRTUAL && !VirtualThreads.isSupported()) {
+            Log.error("Virtual threads require JDK 21+, falling back to BIO");
+            currentMode = mode = IoMode.BIO;
+        }
+        if (mode == IoMode.VIRTUAL) {
+            threadPool = VirtualThreads.newPerTaskExecutor();
+            pinnedMonitor = VirtualThreads.startPinnedMonitor();
+        } else {
+            // 有界等待队列：线程与队列都满时不再排队，新连接立即收到 503
+            threadPool = new ThreadPoolExecutor(maxThreads, maxThreads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(maxThreads * BIO_QUEUE_PER_THREAD), new ThreadPoolExecutor.AbortPolicy());
+        }
         
         try {
-            serverSocket = new ServerSocket(port);
+            // 通过 ServerSocketChannel 监听（阻塞模式），使接受的 Socket 带有 SocketChannel，
+            // 静态文件可用 FileChannel.transferTo 零拷贝发送
+            serverSocket = ServerSocketChannel.open().bind(new InetSocketAddress(port)).socket();
             running.set(true);
             
-            logSuccess("HTTP Server started on port: " + port);
-            logInfo("Thread pool size: " + maxThreads);
-            logInfo("访问 http://localhost:" + port + "/client.html 打开客户端GUI");
+            Log.success("HTTP Server started on port: " + port);
+            if (mode == IoMode.VIRTUAL) {
+                Log.info("Virtual threads, max concurrent connections: " + AdmissionControl.MAX_CONNECTIONS);
+            } else {
+                Log.info("Thread pool size: " + maxThreads + ", queue: " + maxThreads * BIO_QUEUE_PER_THREAD
+                        + ", max connections: " + AdmissionControl.MAX_CONNECTIONS);
+            }
+            Log.info("访问 http://localhost:" + port + "/client.html 打开客户端GUI");
             
             // 注册shutdown hook
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 stopServer();
             }));
             
-            // 更新GUI连接计数
-            if (gui != null) {
-                gui.updateConnectionCount(0);
-            }
-            
             while (running.get()) {
                 try {
                     Socket clientSocket = serverSocket.accept();
-                    int connId = connectionCount.incrementAndGet();
-                    
-                    logInfo("New connection #" + connId + " from " + 
-                           clientSocket.getInetAddress().getHostAddress() + 
-                           ":" + clientSocket.getPort());
-                    
-                    // 更新GUI
-                    if (gui != null) {
-                        gui.updateConnectionCount(connId);
+                    InetSocketAddress remote = (InetSocketAddress) clientSocket.getRemoteSocketAddress();
+                    // 准入控制：超出单 IP 速率或全局连接数的连接立即拒绝，不进入队列
+                    AdmissionControl.Decision decision = admission.tryAdmit(remote.getAddress());
+                    if (decision != AdmissionControl.Decision.ACCEPT) {
+                        AdmissionControl.reject(clientSocket.getChannel(), decision);
+                        continue;
                     }
+                    int connId = onConnectionAccepted(remote);
                     
-                    // 使用线程池处理请求
-                    threadPool.execute(new RequestHandler(clientSocket, userService, connId));
+                    // 使用线程池处理请求，连接关闭后归还名额
+                    RequestHandler handler = new RequestHandler(clientSocket, userService, staticCache, connId);
+                    try {
+                        threadPool.execute(() -> {
+                            try {
+                                handler.run();
+                            } finally {
+                                admission.release();
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        // 线程和等待队列都已满
+                        admission.shed();
+                        AdmissionControl.reject(clientSocket.getChannel(), AdmissionControl.Decision.OVERLOADED);
+                    }
                 } catch (Exception e) {
                     if (running.get()) {
-                        logError("Error accepting connection: " + e.getMessage());
+                        Log.error("Error accepting connection: " + e.getMessage());
                     }
                 }
             }
         } catch (Exception e) {
-            logError("Server startup failed: " + e.getMessage());
+            Log.error("Server startup failed: " + e.getMessage());
             running.set(false);
         } finally {
             if (threadPool != null) {
@@ -89,6 +184,36 @@ public class HttpServer {
         }
     }
     
+    private static void startNioServer(int port, int maxThreads) {
+        int eventLoops = Math.max(1, Runtime.getRuntime().availableProcessors());
+        nioServer = new NioHttpServer(port, maxThreads, eventLoops, userService, staticCache, admission);
+        running.set(true);
+        Log.success("HTTP Server (NIO) started on port: " + port);
+        Log.info("Event loops: " + eventLoops + ", worker threads: " + maxThreads);
+        Log.info("访问 http://localhost:" + port + "/client.html 打开客户端GUI");
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopServer();
+        }));
+
+        try {
+            nioServer.start();
+        } catch (Exception e) {
+            Log.error("Server startup failed: " + e.getMessage());
+            running.set(false);
+        }
+    }
+
+    // 新连接建立：分配连接编号并记录日志（BIO/NIO 共用；GUI 由运行监控面板定时采样连接数）
+    static int onConnectionAccepted(InetSocketAddress remote) {
+        int connId = connectionCount.incrementAndGet();
+
+        Log.info("New connection #" + connId + " from " +
+               remote.getAddress().getHostAddress() +
+               ":" + remote.getPort());
+        return connId;
+    }
+
     public static void stopServer() {
         if (!running.get()) {
             return;
@@ -101,14 +226,23 @@ public class HttpServer {
                 serverSocket.close();
             }
         } catch (Exception e) {
-            logError("Error closing server socket: " + e.getMessage());
+            Log.error("Error closing server socket: " + e.getMessage());
         }
         
         if (threadPool != null) {
             threadPool.shutdown();
         }
+
+        if (nioServer != null) {
+            nioServer.stop();
+        }
+
+        if (pinnedMonitor != null) {
+            VirtualThreads.stopPinnedMonitor(pinnedMonitor);
+            pinnedMonitor = null;
+        }
         
-        logSuccess("Server stopped");
+        Log.success("Server stopped");
     }
     
     public static boolean isRunning() {
@@ -118,6 +252,30 @@ public class HttpServer {
     public static int getConnectionCount() {
         return connectionCount.get();
     }
+
+    // 当前打开的连接数
+    public static int getActiveConnections() {
+        return admission.activeConnections();
+    }
+
+    static AdmissionControl getAdmissionControl() {
+        return admission;
+    }
+
+    // 等待工作线程处理的连接（BIO）或请求（NIO）数；虚拟线程模式没有队列
+    public static int getQueueDepth() {
+        if (nioServer != null && currentMode == IoMode.NIO) {
+            return nioServer.queueDepth();
+        }
+        if (threadPool instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) threadPool).getQueue().size();
+        }
+        return 0;
+    }
+
+    static AccessLog getAccessLog() {
+        return accessLog;
+    }
     
     public static int getPort() {
         return currentPort;
@@ -126,29 +284,12 @@ public class HttpServer {
     public static int getMaxThreads() {
         return currentMaxThreads;
     }
-    
-    // 日志方法
-    private static void logInfo(String message) {
-        if (gui != null) {
-            gui.logInfo(message);
-        } else {
-            System.out.println(message);
-        }
-    }
-    
-    private static void logError(String message) {
-        if (gui != null) {
-            gui.logError(message);
-        } else {
-            System.err.println(message);
-        }
+
+    public static StaticResourceCache getStaticCache() {
+        return staticCache;
     }
-    
-    private static void logSuccess(String message) {
-        if (gui != null) {
-            gui.logSuccess(message);
-        } else {
-            System.out.println(message);
-        }
+
+    public static IoMode getMode() {
+        return currentMode;
     }
-}
\ No newline at end of file
+}
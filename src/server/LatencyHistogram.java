@@ -0,0 +1,123 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁延迟直方图（HDR 风格的对数-线性分桶，单位纳秒）
+ * <p>
+ * 小于 {@link #SUB_BUCKETS} 的值每个值一个桶；更大的值按最高位所在的 2 的幂分段，每段再等分为
+ * {@link #SUB_BUCKETS}/2 个桶，相对误差不超过 1/64（约 1.6%）。桶下标只用移位计算，
+ * {@link #record} 只做数组元素的原子自增，不分配对象、不加锁。
+ * 超过 {@link #MAX_VALUE}（约 18 分钟）的值计入最后一个桶。
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    // 可精确分桶的最大值：2^40 - 1 纳秒
+    static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * 记录一次耗时（纳秒）
+     */
+    void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * 当前各桶计数的快照（各计数分别读取，与并发写入之间只保证最终一致）
+     */
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.sum());
+    }
+
+    /**
+     * 直方图快照：可计算分位数，两个快照相减得到这段时间内的分布
+     */
+    static final class Snapshot {
+        final long[] counts;
+        final long count;
+        final long sum;
+
+        Snapshot(long[] counts, long count, long sum) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        /**
+         * @param q 分位（0~1）
+         * @return 该分位所在桶的中点（纳秒），没有数据时返回 0
+         */
+        long valueAtQuantile(double q) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return (lowerBound(i) + upperBound(i)) / 2;
+                }
+            }
+            return upperBound(counts.length - 1);
+        }
+
+        // 本快照减去较早的快照
+        Snapshot minus(Snapshot earlier) {
+            long[] diff = new long[counts.length];
+            for (int i = 0; i < diff.length; i++) {
+                diff[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(diff, count - earlier.count, sum - earlier.sum);
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // 保留最高的 SUB_BUCKET_BITS 位：mantissa 落在 [HALF, SUB_BUCKETS)
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int mantissa = (int) (value >>> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF + (mantissa - HALF);
+    }
+
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int k = index - SUB_BUCKETS;
+        int shift = k / HALF + 1;
+        return (long) (k % HALF + HALF) << shift;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int k = index - SUB_BUCKETS;
+        int shift = k / HALF + 1;
+        return ((long) (k % HALF + HALF + 1) << shift) - 1;
+    }
+}
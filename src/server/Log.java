@@ -0,0 +1,240 @@
+package server;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步日志：请求线程只把日志记录放入无锁环形缓冲区，由后台线程成批取出、格式化并写到各输出端
+ * <p>
+ * 缓冲区（{@link RingBuffer}）已满时丢弃该记录并计数（不阻塞请求线程），丢弃数量随后以一条警告记录输出。消费者每批最多取出 {@link #BATCH_SIZE} 条，
+ * 控制台每批只 flush 一次，其他输出端（如服务器 GUI）每批收到一次回调。
+ * 低于当前级别的记录在入队前即被过滤。
+ * <p>
+ * 可通过系统属性 {@code server.logLevel}（DEBUG/INFO/WARN/ERROR）与 {@code server.logBufferSize} 调整。
+ */
+final class Log {
+    /**
+     * 日志级别（按严重程度递增）
+     */
+    enum Level {
+        DEBUG,
+        INFO,
+        // 服务器启动、停止等状态变化（GUI 中以绿色显示）
+        SUCCESS,
+        WARN,
+        ERROR
+    }
+
+    /**
+     * 一条日志记录（不可变，可交给其他线程保存）
+     */
+    static final class Record {
+        final Level level;
+        final long timeMillis;
+        final String message;
+
+        Record(Level level, long timeMillis, String message) {
+            this.level = level;
+            this.timeMillis = timeMillis;
+            this.message = message;
+        }
+    }
+
+    /**
+     * 日志输出端：在日志线程中按批调用，应当很快返回
+     */
+    interface Sink {
+        void write(List<Record> batch);
+    }
+
+    // 环形缓冲区容量（向上取整为 2 的幂）
+    static final int BUFFER_SIZE = Integer.getInteger("server.logBufferSize", 8192);
+    // 每批最多处理的记录数
+    static final int BATCH_SIZE = 256;
+    // 缓冲区为空时日志线程最长休眠时间
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private static final RingBuffer<Record> buffer = new RingBuffer<>(BUFFER_SIZE);
+    private static volatile Level threshold = parseLevel(System.getProperty("server.logLevel"), Level.INFO);
+    private static final LongAdder dropped = new LongAdder();
+    private static final LongAdder written = new LongAdder();
+    // 已写完（控制台与各输出端都已返回）的环形缓冲区序号，只由日志线程写
+    private static volatile long writtenSequence;
+    private static final List<Sink> sinks = new CopyOnWriteArrayList<>();
+    // 控制台输出（在 GUI 重定向 System.out/err 之前取得）
+    private static final PrintStream stdout = System.out;
+    private static final PrintStream stderr = System.err;
+    private static volatile boolean consoleEnabled = true;
+    private static final Thread consumer;
+
+    static {
+        consumer = new Thread(Log::run, "async-logger");
+        consumer.setDaemon(true);
+        consumer.start();
+        // 进程退出前写出缓冲区中剩余的记录
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(1000), "async-logger-flush"));
+    }
+
+    private Log() {
+    }
+
+    static void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    static void success(String message) {
+        log(Level.SUCCESS, message);
+    }
+
+    static void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    // 拼接开销较大的日志可先判断级别
+    static boolean isEnabled(Level level) {
+        return level.compareTo(threshold) >= 0;
+    }
+
+    static void setLevel(Level level) {
+        threshold = level;
+    }
+
+    /**
+     * 放入环形缓冲区；级别被过滤或缓冲区已满时返回 false
+     */
+    static boolean log(Level level, String message) {
+        if (!isEnabled(level)) {
+            return false;
+        }
+        if (!buffer.offer(new Record(level, System.currentTimeMillis(), message))) {
+            // 日志线程跟不上：丢弃，不阻塞调用方
+            dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    static void addSink(Sink sink) {
+        sinks.add(sink);
+    }
+
+    static void removeSink(Sink sink) {
+        sinks.remove(sink);
+    }
+
+    // 关闭后只输出到已注册的输出端（GUI 模式下不再重复打印到控制台）
+    static void setConsoleEnabled(boolean enabled) {
+        consoleEnabled = enabled;
+    }
+
+    // 因缓冲区已满被丢弃的记录数
+    static long droppedCount() {
+        return dropped.sum();
+    }
+
+    // 已输出的记录数
+    static long writtenCount() {
+        return written.sum();
+    }
+
+    /**
+     * 等待调用前已入队的记录全部写出（最多 timeoutMillis 毫秒）；只取出缓冲区还不够，须等日志线程写完该批
+     */
+    static void flush(long timeoutMillis) {
+        long target = buffer.nextSequence();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (writtenSequence < target && System.nanoTime() < deadline) {
+            buffer.wakeUp();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private static void run() {
+        List<Record> batch = new ArrayList<>(BATCH_SIZE + 1);
+        StringBuilder out = new StringBuilder(4096);
+        StringBuilder err = new StringBuilder(1024);
+        long reportedDrops = 0;
+        long cachedSecond = Long.MIN_VALUE;
+        String cachedTime = "";
+        while (true) {
+            buffer.drainTo(batch, BATCH_SIZE);
+            long drained = buffer.drainedSequence();
+            long drops = dropped.sum();
+            if (drops != reportedDrops) {
+                batch.add(new Record(Level.WARN, System.currentTimeMillis(),
+                        (drops - reportedDrops) + " log records dropped (buffer full)"));
+                reportedDrops = drops;
+            }
+            if (batch.isEmpty()) {
+                writtenSequence = drained;
+                buffer.await(IDLE_PARK_NANOS);
+                continue;
+            }
+
+            if (consoleEnabled) {
+                for (Record record : batch) {
+                    // 时间戳按秒缓存，同一秒内的记录不重复格式化
+                    long second = record.timeMillis / 1000;
+                    if (second != cachedSecond) {
+                        cachedSecond = second;
+                        cachedTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(record.timeMillis), ZONE)
+                                .format(TIME_FORMAT);
+                    }
+                    StringBuilder sb = record.level.compareTo(Level.WARN) >= 0 ? err : out;
+                    sb.append('[').append(cachedTime).append("] ").append(record.message).append('\n');
+                }
+                flushConsole(stdout, out);
+                flushConsole(stderr, err);
+            }
+            for (Sink sink : sinks) {
+                try {
+                    sink.write(batch);
+                } catch (RuntimeException e) {
+                    stderr.println("Log sink failed: " + e);
+                }
+            }
+            written.add(batch.size());
+            writtenSequence = drained;
+            batch.clear();
+        }
+    }
+
+    private static void flushConsole(PrintStream stream, StringBuilder sb) {
+        if (sb.length() > 0) {
+            stream.print(sb);
+            stream.flush();
+            sb.setLength(0);
+        }
+    }
+
+    private static Level parseLevel(String name, Level defaultLevel) {
+        if (name == null) {
+            return defaultLevel;
+        }
+        try {
+            return Level.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultLevel;
+        }
+    }
+}
@@ -44,6 +44,18 @@ public class MimeUtils {
         MIME_MAP.put(".avi", "video/x-msvideo");
     }
 
+    // 是否值得压缩：文本类、脚本、JSON/XML、SVG；图片、音视频、压缩包等已压缩格式不再压缩
+    public static boolean isCompressible(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        return mimeType.startsWith("text/")
+                || mimeType.startsWith("application/javascript")
+                || mimeType.startsWith("application/json")
+                || mimeType.startsWith("application/xml")
+                || mimeType.startsWith("image/svg+xml");
+    }
+
     // 根据文件后缀获取MIME类型，默认返回application/octet-stream
     public static String getMimeType(String path) {
         int lastDotIndex = path.lastIndexOf(".");
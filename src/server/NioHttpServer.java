@@ -0,0 +1,815 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于 java.nio 的非阻塞服务器引擎
+ * <p>
+ * 一个 ServerSocketChannel 负责 accept，新连接按轮询分配给 N 个事件循环线程，
+ * 每个事件循环持有自己的 Selector 负责读写；请求解析完整后交给有界工作线程池，
+ * 复用 {@link RequestHandler#process} 的路由逻辑。空闲的长连接只占用一个 SelectionKey，
+ * 不再独占线程。
+ */
+public class NioHttpServer {
+    // 读缓冲区上限：请求体边收边转入 RequestBody.Spool，读缓冲只需容纳请求头与少量流水线数据
+    private static final int MAX_READ_BUFFER_BYTES = 64 * 1024;
+    // 流水线请求的响应最多合并缓存的字节数，超出立即写出
+    private static final int MAX_CORKED_BYTES = 64 * 1024;
+    // 一次聚集写最多合并的缓冲区个数
+    private static final int MAX_GATHER = 16;
+    // 单个连接已交给事件循环但尚未写出的流式响应数据上限，超出时工作线程等待写出
+    private static final int MAX_QUEUED_RESPONSE_BYTES = 256 * 1024;
+    // 流式响应等待写出的最长时间（客户端长时间不读取时放弃该连接）
+    private static final long WRITE_STALL_TIMEOUT_MS = 30_000;
+    // 每个工作线程允许排队的请求数
+    private static final int QUEUE_PER_WORKER = 64;
+    // accept 失败（如文件描述符耗尽）后暂停接受新连接的时长，避免监听通道持续就绪导致空转
+    private static final long ACCEPT_BACKOFF_MS = 100;
+
+    private final int port;
+    private final UserService userService;
+    private final StaticResourceCache staticCache;
+    private final AdmissionControl admission;
+    private final EventLoop[] loops;
+    private final ThreadPoolExecutor workers;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private ServerSocketChannel serverChannel;
+    private Selector acceptSelector;
+    private volatile boolean running;
+    private int nextLoop = 0;
+
+    public NioHttpServer(int port, int workerThreads, int eventLoopThreads,
+                         UserService userService, StaticResourceCache staticCache, AdmissionControl admission) {
+        this.port = port;
+        this.admission = admission;
+        this.userService = userService;
+        this.staticCache = staticCache;
+        this.loops = new EventLoop[eventLoopThreads];
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(workerThreads * QUEUE_PER_WORKER));
+    }
+
+    /**
+     * 启动监听与事件循环，并在当前线程运行 accept 循环，直到 {@link #stop()} 被调用
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+            loops[i].start();
+        }
+        running = true;
+
+        try {
+            while (running) {
+                acceptSelector.select();
+                Iterator<SelectionKey> it = acceptSelector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    }
+                }
+            }
+        } catch (ClosedChannelException | ClosedSelectorException e) {
+            // stop() 关闭了监听通道
+        } finally {
+            shutdown();
+            stopped.countDown();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        if (acceptSelector != null) {
+            acceptSelector.wakeup();
+        }
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        stopped.await();
+    }
+
+    // 接受所有已到达的连接；单个连接出错（文件描述符耗尽、对端已重置等）只影响该连接，监听继续
+    private void accept() throws ClosedChannelException {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                throw e;
+            } catch (IOException e) {
+                Log.error("Error accepting connection: " + e.getMessage());
+                backOff();
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            boolean admitted = false;
+            try {
+                InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+                AdmissionControl.Decision decision = admission.tryAdmit(remote.getAddress());
+                if (decision != AdmissionControl.Decision.ACCEPT) {
+                    AdmissionControl.reject(channel, decision);
+                    continue;
+                }
+                admitted = true;
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                int connId = HttpServer.onConnectionAccepted(remote);
+                EventLoop loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+                loop.register(channel, connId);
+            } catch (IOException e) {
+                Log.error("Error accepting connection: " + e.getMessage());
+                closeQuietly(channel);
+                if (admitted) {
+                    admission.release();
+                }
+            }
+        }
+    }
+
+    private static void backOff() {
+        try {
+            Thread.sleep(ACCEPT_BACKOFF_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void shutdown() {
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+        workers.shutdown();
+        try {
+            if (serverChannel != null) serverChannel.close();
+            if (acceptSelector != null) acceptSelector.close();
+        } catch (IOException e) {
+            Log.error("Error closing NIO server channel: " + e.getMessage());
+        }
+    }
+
+    // 工作线程池中等待处理的请求数
+    int queueDepth() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * 事件循环：单线程驱动一个 Selector，负责其上所有连接的读写；
+     * 其他线程通过 {@link #execute} 投递任务，保证连接状态只在本线程修改
+     */
+    private final class EventLoop extends Thread {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean active = true;
+
+        EventLoop(int index) throws IOException {
+            super("nio-event-loop-" + index);
+            setDaemon(true);
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel, int connId) {
+            execute(() -> {
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    Connection conn = new Connection(this, channel, key, connId);
+                    key.attach(conn);
+                    conn.updateTimer();
+                } catch (IOException e) {
+                    Log.error("Connection #" + connId + " register failed: " + e.getMessage());
+                    closeQuietly(channel);
+                    admission.release();
+                }
+            });
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            active = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (active) {
+                    // 超时由时间轮投递任务唤醒，不需要定期扫描连接
+                    selector.select();
+                    runTasks();
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Connection conn = (Connection) key.attachment();
+                        if (conn == null || !key.isValid()) continue;
+                        try {
+                            if (key.isReadable()) conn.onReadable();
+                            if (key.isValid() && key.isWritable()) conn.flushOutbound();
+                        } catch (IOException e) {
+                            conn.close();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                Log.error(getName() + " failed: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    Connection conn = (Connection) key.attachment();
+                    if (conn != null) conn.close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * 单个连接的状态：读缓冲、待写出队列、当前是否有请求在工作线程中处理。
+     * 除 {@link ResponseStream} 外所有方法只在所属事件循环线程调用
+     */
+    private final class Connection {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final int connId;
+        private final RequestHandler handler;
+        private final ArrayDeque<Pending> outbound = new ArrayDeque<>();
+        private ByteBuffer inBuf = ByteBuffer.allocate(4096);
+        // 同一连接同时只有一个请求在处理，解析器在处理完成后才被重置复用
+        private final HttpRequestParser parser = new HttpRequestParser();
+        private boolean processing = false;
+        // 正在接收的请求体（请求头已解析、请求体尚未收齐时不为 null）
+        private RequestBody.Spool spool;
+        private boolean closeAfterFlush = false;
+        // 读缓冲中还有后续流水线请求：当前响应先留在队列中，与后续响应合并写出
+        private boolean corked = false;
+        private int corkedBytes = 0;
+        private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+        // 工作线程中的响应流也会读取
+        private volatile boolean closed = false;
+        private int handled = 0;
+        // 当前超时阶段（ConnectionTimeouts 中的阶段名，null 表示请求在工作线程处理中）及其定时任务；
+        // 定时任务到期时把检查投递回事件循环，timerGeneration 用于识别已被替换的旧任务
+        private String timerPhase;
+        private TimerWheel.Timeout timer;
+        private int timerGeneration;
+        private long phaseStartNanos;
+        private long phaseStartBytes;
+        // 累计读入、写出的字节数（用于按最低传输速率判断请求体与响应写出是否超时）
+        private long bytesRead;
+        private long bytesWritten;
+        // 当前请求第一个字节到达的时间（0 表示尚未开始）与发送队列由空变为非空的时间（写出延迟统计）
+        private long parseStartNanos;
+        private long writeStartNanos;
+
+        Connection(EventLoop loop, SocketChannel channel, SelectionKey key, int connId) {
+            this.loop = loop;
+            this.channel = channel;
+            this.key = key;
+            this.connId = connId;
+            this.handler = new RequestHandler(new ResponseStream(this), userService, staticCache, connId);
+        }
+
+        void onReadable() throws IOException {
+            if (!inBuf.hasRemaining()) {
+                if (inBuf.capacity() >= MAX_READ_BUFFER_BYTES) {
+                    // 请求处理中且缓冲已满：暂停读取，等待当前请求完成
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    return;
+                }
+                ByteBuffer bigger = ByteBuffer.allocate(Math.min(inBuf.capacity() * 2, MAX_READ_BUFFER_BYTES));
+                inBuf.flip();
+                bigger.put(inBuf);
+                inBuf = bigger;
+            }
+            int n = channel.read(inBuf);
+            if (n == -1) {
+                // 对端关闭：已排队的响应仍然写完
+                closeAfterFlush = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                if (!processing && outbound.isEmpty()) close();
+                return;
+            }
+            bytesRead += n;
+            ServerMetrics.BYTES_IN.add(n);
+            tryDispatch();
+            updateTimer();
+        }
+
+        // 从读缓冲中解析一个完整请求并提交给工作线程；同一连接同时只处理一个请求以保证响应顺序
+        private void tryDispatch() {
+            if (processing || closed || closeAfterFlush) return;
+            inBuf.flip();
+            try {
+                if (parseStartNanos == 0 && spool == null && inBuf.hasRemaining()) {
+                    parseStartNanos = System.nanoTime();
+                }
+                if (!parser.parse(inBuf)) {
+                    return; // 请求头尚未收全
+                }
+                if (parseStartNanos != 0) {
+                    ServerMetrics.PARSE.record(System.nanoTime() - parseStartNanos);
+                    parseStartNanos = 0;
+                }
+                long contentLength = Math.max(0, parser.contentLength());
+                RequestBody body;
+                if (contentLength == 0) {
+                    body = RequestBody.EMPTY;
+                } else {
+                    if (spool == null) {
+                        // 刚解析完请求头：检查长度与 Expect，再开始接收请求体
+                        boolean expectsContinue = RequestHandler.expectsContinue(parser);
+                        spool = new RequestBody.Spool(contentLength);
+                        if (expectsContinue && inBuf.remaining() < contentLength) {
+                            enqueue(ByteBuffer.wrap(HttpResponseWriter.CONTINUE));
+                        }
+                    }
+                    // 请求体尚未收全时保留 spool（解析器保持完成状态），下次读到数据后继续
+                    spool.write(inBuf);
+                    if (!spool.isComplete()) {
+                        return;
+                    }
+                    body = spool.finish();
+                    spool = null;
+                }
+
+                processing = true;
+                corked = inBuf.hasRemaining();
+                handled++;
+                int requestNo = handled;
+                try {
+                    workers.execute(() -> {
+                        boolean keepAlive;
+                        try (RequestBody requestBody = body) {
+                            keepAlive = handler.process(parser, requestBody, requestNo);
+                        } catch (Exception e) {
+                            Log.error("Connection #" + connId + " error: " + e.getMessage());
+                            handler.sendServerError(e);
+                            keepAlive = false;
+                        }
+                        boolean reuse = keepAlive;
+                        loop.execute(() -> onRequestDone(reuse));
+                    });
+                } catch (RejectedExecutionException e) {
+                    processing = false;
+                    closeQuietly(body);
+                    rejectAndClose(503, "Service Unavailable");
+                }
+            } catch (HttpRequestParser.ParseException e) {
+                rejectAndClose(e.statusCode, e.statusMsg);
+            } catch (IOException e) {
+                // 请求体临时文件写入失败
+                Log.error("Connection #" + connId + " body spool error: " + e.getMessage());
+                rejectAndClose(500, "Internal Server Error");
+            } finally {
+                inBuf.compact();
+            }
+        }
+
+        private void onRequestDone(boolean keepAlive) {
+            processing = false;
+            parser.reset();
+            if (!keepAlive) {
+                closeAfterFlush = true;
+                uncork();
+                updateTimer();
+                return;
+            }
+            // 恢复读取（可能因缓冲已满暂停过），并尝试处理已缓冲的下一个请求
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+            tryDispatch();
+            if (!processing) {
+                // 流水线中已没有完整请求：把累积的响应一次写出
+                uncork();
+            }
+            updateTimer();
+        }
+
+        private void uncork() {
+            corked = false;
+            try {
+                flushOutbound();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void rejectAndClose(int statusCode, String statusMsg) {
+            String response = "HTTP/1.1 " + statusCode + " " + statusMsg + "\r\n"
+                    + (statusCode == 503 ? "Retry-After: " + AdmissionControl.RETRY_AFTER_SECONDS + "\r\n" : "")
+                    + "Connection: close\r\n"
+                    + "Content-Length: 0\r\n\r\n";
+            closeAfterFlush = true;
+            corked = false;
+            enqueue(ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)));
+        }
+
+        void enqueue(ByteBuffer buf) {
+            enqueue(new BufferPending(buf));
+        }
+
+        void enqueue(Pending pending) {
+            if (closed) {
+                pending.release();
+                return;
+            }
+            if (outbound.isEmpty()) {
+                writeStartNanos = System.nanoTime();
+            }
+            outbound.add(pending);
+            if (corked && pending instanceof BufferPending) {
+                corkedBytes += ((BufferPending) pending).buf.remaining();
+                if (corkedBytes < MAX_CORKED_BYTES) return;
+            }
+            try {
+                flushOutbound();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void flushOutbound() throws IOException {
+            corkedBytes = 0;
+            while (!outbound.isEmpty()) {
+                Pending head = outbound.peek();
+                if (head instanceof BufferPending && outbound.size() > 1) {
+                    if (!writeGathered()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        updateTimer();
+                        return;
+                    }
+                    continue;
+                }
+                long before = head.remaining();
+                boolean done = head.writeTo(channel);
+                long n = before - head.remaining();
+                bytesWritten += n;
+                ServerMetrics.BYTES_OUT.add(n);
+                if (!done) {
+                    // 套接字发送缓冲已满，等待可写事件
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    updateTimer();
+                    return;
+                }
+                outbound.poll().release();
+            }
+            if (writeStartNanos != 0) {
+                ServerMetrics.WRITE.record(System.nanoTime() - writeStartNanos);
+                writeStartNanos = 0;
+            }
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+            if (closeAfterFlush && !processing) {
+                close();
+            }
+            updateTimer();
+        }
+
+        // 把队首连续的内存缓冲用一次聚集写（writev）写出，全部写完返回 true
+        private boolean writeGathered() throws IOException {
+            int count = 0;
+            for (Pending p : outbound) {
+                if (!(p instanceof BufferPending) || count == MAX_GATHER) break;
+                gather[count++] = ((BufferPending) p).buf;
+            }
+            long n = channel.write(gather, 0, count);
+            bytesWritten += n;
+            ServerMetrics.BYTES_OUT.add(n);
+            boolean done = true;
+            for (int i = 0; i < count; i++) {
+                if (gather[i].hasRemaining()) {
+                    done = false;
+                } else if (done) {
+                    outbound.poll().release();
+                }
+                gather[i] = null;
+            }
+            return done;
+        }
+
+        /**
+         * 按连接当前状态确定超时阶段，阶段变化时重新设置截止时间：
+         * 等待可写（响应写出）、请求体未收齐、请求头未收齐、长连接空闲；请求在工作线程处理中时不计时
+         */
+        void updateTimer() {
+            if (closed) return;
+            String phase;
+            if (key.isValid() && (key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+                phase = ConnectionTimeouts.RESPONSE_WRITE;
+            } else if (spool != null) {
+                phase = ConnectionTimeouts.BODY_READ;
+            } else if (processing) {
+                phase = null;
+            } else if (!parser.isIdle()) {
+                phase = ConnectionTimeouts.HEADER_READ;
+            } else {
+                phase = ConnectionTimeouts.IDLE;
+            }
+            if (phase == timerPhase) return;
+            if (timer != null) {
+                timer.cancel();
+                timer = null;
+            }
+            timerPhase = phase;
+            timerGeneration++;
+            if (phase == null) return;
+            phaseStartNanos = System.nanoTime();
+            phaseStartBytes = phase == ConnectionTimeouts.RESPONSE_WRITE ? bytesWritten : bytesRead;
+            armTimer(timeoutMillis(phase, 0));
+        }
+
+        private void armTimer(long delayMillis) {
+            int generation = timerGeneration;
+            timer = ConnectionTimeouts.WHEEL.schedule(delayMillis, () -> loop.execute(() -> onTimer(generation)));
+        }
+
+        // 阶段从开始到现在允许的总时长：请求体按其长度计算（与 BIO 相同）；
+        // 响应写出的总量事先未知，按已写出字节数延长（即要求平均速率不低于最低传输速率）
+        private long timeoutMillis(String phase, long transferred) {
+            if (phase == ConnectionTimeouts.HEADER_READ) return ConnectionTimeouts.HEADER_TIMEOUT_MS;
+            if (phase == ConnectionTimeouts.IDLE) return RequestHandler.KEEP_ALIVE_TIMEOUT_MS;
+            if (phase == ConnectionTimeouts.BODY_READ) {
+                return ConnectionTimeouts.transferTimeoutMillis(parser.contentLength());
+            }
+            return ConnectionTimeouts.transferTimeoutMillis(transferred);
+        }
+
+        private void onTimer(int generation) {
+            if (closed || generation != timerGeneration) return;
+            long transferred = (timerPhase == ConnectionTimeouts.RESPONSE_WRITE ? bytesWritten : bytesRead)
+                    - phaseStartBytes;
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - phaseStartNanos);
+            long allowed = timeoutMillis(timerPhase, transferred);
+            if (elapsed < allowed) {
+                // 期间有数据传输，截止时间相应后延
+                armTimer(allowed - elapsed);
+                return;
+            }
+            Log.log(timerPhase == ConnectionTimeouts.IDLE ? Log.Level.INFO : Log.Level.WARN,
+                    "Connection #" + connId + " " + timerPhase + " timeout");
+            close();
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            key.cancel();
+            if (timer != null) {
+                timer.cancel();
+                timer = null;
+            }
+            if (spool != null) {
+                closeQuietly(spool);
+                spool = null;
+            }
+            Pending pending;
+            while ((pending = outbound.poll()) != null) {
+                pending.release();
+            }
+            closeQuietly(channel);
+            admission.release();
+            Log.info("Connection #" + connId + " closed");
+        }
+    }
+
+    /**
+     * 工作线程写响应用的输出流：在本地缓冲，flush 时把数据投递给事件循环写出
+     * <p>
+     * 已投递但尚未写到套接字的字节数超过 {@link #MAX_QUEUED_RESPONSE_BYTES} 时，flush 阻塞到事件循环写出一部分，
+     * 流式响应的生成速度因此受客户端读取速度限制，排队内存有上限。
+     */
+    private static final class ResponseStream extends OutputStream implements FileTransferSink {
+        private final Connection conn;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+        // 已投递、尚未写出（或丢弃）的字节数
+        private final AtomicLong queued = new AtomicLong();
+        private final Object drained = new Object();
+
+        ResponseStream(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            buffer.write(b, off, len);
+            if (buffer.size() >= 64 * 1024) {
+                flush();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (buffer.size() == 0) return;
+            if (conn.closed) {
+                buffer.reset();
+                throw new IOException("Connection closed");
+            }
+            byte[] data = buffer.toByteArray();
+            buffer.reset();
+            queued.addAndGet(data.length);
+            BufferPending pending = new BufferPending(ByteBuffer.wrap(data), this);
+            conn.loop.execute(() -> conn.enqueue(pending));
+            awaitDrained();
+        }
+
+        // 排队数据过多时等待事件循环写出
+        private void awaitDrained() throws IOException {
+            if (queued.get() <= MAX_QUEUED_RESPONSE_BYTES) return;
+            synchronized (drained) {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WRITE_STALL_TIMEOUT_MS);
+                while (queued.get() > MAX_QUEUED_RESPONSE_BYTES) {
+                    long waitMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (waitMs <= 0) {
+                        throw new IOException("Response write stalled");
+                    }
+                    try {
+                        drained.wait(waitMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for response write");
+                    }
+                }
+            }
+        }
+
+        // 事件循环写出或丢弃了 n 字节（连接关闭时排队数据全部丢弃，等待者随之醒来）
+        void sent(int n) {
+            long after = queued.addAndGet(-n);
+            if (after <= MAX_QUEUED_RESPONSE_BYTES && after + n > MAX_QUEUED_RESPONSE_BYTES) {
+                synchronized (drained) {
+                    drained.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void transferFile(FileChannel file, long position, long count) throws IOException {
+            // 先把已缓冲的响应头排入队列，保证顺序
+            flush();
+            FilePending region = new FilePending(file, position, count);
+            conn.loop.execute(() -> conn.enqueue(region));
+        }
+
+        @Override
+        public void transferBuffer(ByteBuffer data) throws IOException {
+            flush();
+            conn.loop.execute(() -> conn.enqueue(data));
+        }
+    }
+
+    /**
+     * 待写出的数据：内存缓冲或文件区间
+     */
+    private interface Pending {
+        // 尽可能写出，全部写完返回 true；套接字缓冲已满返回 false
+        boolean writeTo(SocketChannel channel) throws IOException;
+
+        // 尚未写出的字节数
+        long remaining();
+
+        // 释放资源（写完或连接关闭时调用）
+        void release();
+    }
+
+    private static final class BufferPending implements Pending {
+        private final ByteBuffer buf;
+        // 计入流式响应排队量的来源（为 null 表示不计）
+        private final ResponseStream owner;
+        private final int size;
+
+        BufferPending(ByteBuffer buf) {
+            this(buf, null);
+        }
+
+        BufferPending(ByteBuffer buf, ResponseStream owner) {
+            this.buf = buf;
+            this.owner = owner;
+            this.size = buf.remaining();
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel) throws IOException {
+            channel.write(buf);
+            return !buf.hasRemaining();
+        }
+
+        @Override
+        public long remaining() {
+            return buf.remaining();
+        }
+
+        @Override
+        public void release() {
+            if (owner != null) {
+                owner.sent(size);
+            }
+        }
+    }
+
+    // 文件区间：由事件循环通过 transferTo 直接从页缓存发送（Linux 下为 sendfile）
+    private static final class FilePending implements Pending {
+        private final FileChannel file;
+        private long position;
+        private long remaining;
+
+        FilePending(FileChannel file, long position, long count) {
+            this.file = file;
+            this.position = position;
+            this.remaining = count;
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel) throws IOException {
+            while (remaining > 0) {
+                long n = file.transferTo(position, remaining, channel);
+                if (n <= 0) {
+                    if (position >= file.size()) {
+                        throw new EOFException("File truncated while sending");
+                    }
+                    return false;
+                }
+                position += n;
+                remaining -= n;
+            }
+            return true;
+        }
+
+        @Override
+        public long remaining() {
+            return remaining;
+        }
+
+        @Override
+        public void release() {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * 密码哈希：加盐 PBKDF2-HMAC-SHA256，迭代次数固定（默认 {@value #DEFAULT_ITERATIONS}，
+ * 系统属性 {@code server.pbkdf2Iterations}）
+ * <p>
+ * 哈希计算在独立的有界线程池中执行，与连接线程分开：线程数只占一半 CPU，队列满时直接拒绝
+ * （{@link RejectedExecutionException}），由调用方返回 503，大量登录请求不会占满 CPU 或全部工作线程，
+ * 静态资源仍能正常响应。
+ * <p>
+ * 存储格式：{@code pbkdf2-sha256$<迭代次数>$<盐 hex>$<哈希 hex>}。
+ * 旧版本保存的无盐 SHA-256（64 位 hex）仍可验证，验证通过后由调用方替换为新格式；
+ * 迭代次数低于当前配置的哈希同样会被升级，高于配置的保持不变。
+ */
+final class PasswordHasher {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BYTES = 32;
+    private static final int LEGACY_HEX_LENGTH = 64;
+
+    static final int DEFAULT_ITERATIONS = 310_000;
+    // 新哈希使用的迭代次数；不按本机速度浮动，同一配置在任何机器上都得到相同的存储格式
+    static final int ITERATIONS = Math.max(1, Integer.getInteger("server.pbkdf2Iterations", DEFAULT_ITERATIONS));
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // 每个哈希线程复用自己的算法实例
+    private static final ThreadLocal<SecretKeyFactory> PBKDF2 = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        }
+    });
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    private final int iterations;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param iterations    PBKDF2 迭代次数
+     * @param threads       哈希线程数
+     * @param queueCapacity 等待队列长度，满时拒绝新的哈希任务
+     */
+    PasswordHasher(int iterations, int threads, int queueCapacity) {
+        this.iterations = iterations;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "password-hash-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // 默认配置：配置的迭代次数，线程数为 CPU 核数的一半，每个线程排队 4 个任务
+    static PasswordHasher createDefault() {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return new PasswordHasher(ITERATIONS, threads, threads * 4);
+    }
+
+    int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * 计算新密码的存储值（在哈希线程池中执行，调用方等待结果）
+     *
+     * @throws RejectedExecutionException 哈希队列已满
+     */
+    String hash(String password) {
+        return await(executor.submit(() -> encode(password)));
+    }
+
+    /**
+     * 验证密码（在哈希线程池中执行，调用方等待结果）
+     *
+     * @return 不匹配时返回 null；匹配时返回应保存的值：与 stored 相同表示无需更新，
+     *         否则为升级后的新格式（旧版无盐哈希或迭代次数偏低）
+     * @throws RejectedExecutionException 哈希队列已满
+     */
+    String verify(String password, String stored) {
+        return await(executor.submit(() -> {
+            if (!matches(password, stored)) {
+                return null;
+            }
+            return needsUpgrade(stored) ? encode(password) : stored;
+        }));
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private String encode(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] hash = pbkdf2(password.toCharArray(), salt, iterations);
+        StringBuilder sb = new StringBuilder(PREFIX.length() + 10 + 2 + (SALT_BYTES + HASH_BYTES) * 2);
+        sb.append(PREFIX).append(iterations).append('$');
+        HexCodec.append(sb, salt, 0, salt.length).append('$');
+        HexCodec.append(sb, hash, 0, hash.length);
+        return sb.toString();
+    }
+
+    private static boolean matches(String password, String stored) {
+        if (stored.length() == LEGACY_HEX_LENGTH && stored.indexOf('$') < 0) {
+            // 旧版本：无盐 SHA-256
+            byte[] expected = new byte[HASH_BYTES];
+            if (!HexCodec.decode(stored, 0, stored.length(), expected)) {
+                return false;
+            }
+            byte[] actual = SHA256.get().digest(password.getBytes(StandardCharsets.UTF_8));
+            return MessageDigest.isEqual(expected, actual);
+        }
+        if (!stored.startsWith(PREFIX)) {
+            return false;
+        }
+        int iterEnd = stored.indexOf('$', PREFIX.length());
+        int saltEnd = iterEnd < 0 ? -1 : stored.indexOf('$', iterEnd + 1);
+        if (saltEnd < 0) {
+            return false;
+        }
+        int storedIterations = parseIterations(stored, PREFIX.length(), iterEnd);
+        byte[] salt = new byte[(saltEnd - iterEnd - 1) / 2];
+        byte[] expected = new byte[HASH_BYTES];
+        if (storedIterations <= 0
+                || !HexCodec.decode(stored, iterEnd + 1, saltEnd, salt)
+                || !HexCodec.decode(stored, saltEnd + 1, stored.length(), expected)) {
+            return false;
+        }
+        byte[] actual = pbkdf2(password.toCharArray(), salt, storedIterations);
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private boolean needsUpgrade(String stored) {
+        if (!stored.startsWith(PREFIX)) {
+            return true;
+        }
+        int iterEnd = stored.indexOf('$', PREFIX.length());
+        return parseIterations(stored, PREFIX.length(), iterEnd) < iterations;
+    }
+
+    // 解析十进制迭代次数，格式错误返回 -1
+    private static int parseIterations(String s, int start, int end) {
+        if (end <= start || end - start > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static byte[] pbkdf2(char[] password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BYTES * 8);
+        try {
+            return PBKDF2.get().generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " failed", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException("Password hashing failed", cause);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 请求体：长度已知、只能顺序读取一次的有界输入流
+ * <p>
+ * BIO 下直接包装套接字输入（处理器读多少收多少）；NIO 下由事件循环预先收齐，
+ * 不超过 {@link #MEMORY_THRESHOLD} 的保存在内存，更大的写入临时文件（{@link Spool}）。
+ * 处理完请求后必须 {@link #close()}：读掉处理器未读的部分（保证连接上的下一个请求从正确位置开始），
+ * 并删除临时文件；连接随后关闭时先调用 {@link #discard()}，跳过读取。
+ * <p>
+ * 长度上限可通过系统属性调整：{@code server.maxBodyBytes}（请求体，超出返回 413）、
+ * {@code server.maxFormBytes}（表单接口）、{@code server.bodyMemoryBytes}（NIO 内存缓存阈值）。
+ */
+final class RequestBody implements Closeable {
+    // 请求体最大字节数，超出时不读取请求体，直接返回 413 并关闭连接
+    static final long MAX_BODY_BYTES = Long.getLong("server.maxBodyBytes", 8L * 1024 * 1024);
+    // 表单接口（注册、登录等）接受的最大请求体
+    static final int MAX_FORM_BYTES = Integer.getInteger("server.maxFormBytes", 64 * 1024);
+    // NIO 下请求体超过该大小时写入临时文件
+    static final int MEMORY_THRESHOLD = Integer.getInteger("server.bodyMemoryBytes", 64 * 1024);
+
+    static final RequestBody EMPTY = new RequestBody(0, InputStream.nullInputStream(), null);
+
+    private final long length;
+    private final InputStream in;
+    // 临时文件（仅 NIO 下的大请求体）
+    private final Path spillFile;
+    // 连接不再复用，关闭时不读掉剩余部分
+    private boolean discarded;
+
+    private RequestBody(long length, InputStream in, Path spillFile) {
+        this.length = length;
+        this.in = in;
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * @param in     最多读出 length 字节的输入流
+     * @param length 请求体长度（Content-Length）
+     */
+    static RequestBody of(InputStream in, long length) {
+        return length <= 0 ? EMPTY : new RequestBody(length, in, null);
+    }
+
+    long length() {
+        return length;
+    }
+
+    InputStream stream() {
+        return in;
+    }
+
+    // 放弃剩余部分：连接即将关闭，close() 时不再读取（例如 413 之后最多还有 MAX_BODY_BYTES 未读）
+    void discard() {
+        if (this != EMPTY) {
+            discarded = true;
+        }
+    }
+
+    // 读掉剩余部分（已放弃的除外）并释放资源
+    @Override
+    public void close() throws IOException {
+        if (this == EMPTY) {
+            return;
+        }
+        try {
+            if (spillFile == null && !discarded) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+        } finally {
+            in.close();
+            if (spillFile != null) {
+                Files.deleteIfExists(spillFile);
+            }
+        }
+    }
+
+    /**
+     * 在事件循环中逐段收集请求体：先写入内存，超过 {@link #MEMORY_THRESHOLD} 后转存到临时文件
+     */
+    static final class Spool implements Closeable {
+        private final long length;
+        private long received;
+        private byte[] memory;
+        private Path file;
+        private FileChannel channel;
+
+        Spool(long length) {
+            this.length = length;
+            if (length <= MEMORY_THRESHOLD) {
+                memory = new byte[(int) length];
+            }
+        }
+
+        /**
+         * 从 src 中取出属于请求体的字节（不会越过请求体末尾，后续流水线请求留在 src 中）
+         */
+        void write(ByteBuffer src) throws IOException {
+            int n = (int) Math.min(src.remaining(), length - received);
+            if (n == 0) {
+                return;
+            }
+            if (memory != null) {
+                src.get(memory, (int) received, n);
+            } else {
+                if (channel == null) {
+                    file = Files.createTempFile("http-body-", ".tmp");
+                    channel = FileChannel.open(file, StandardOpenOption.WRITE);
+                }
+                ByteBuffer slice = src.duplicate();
+                slice.limit(slice.position() + n);
+                while (slice.hasRemaining()) {
+                    channel.write(slice);
+                }
+                src.position(src.position() + n);
+            }
+            received += n;
+        }
+
+        boolean isComplete() {
+            return received == length;
+        }
+
+        // 收齐后转为可读取的请求体，之后由 RequestBody 负责删除临时文件
+        RequestBody finish() throws IOException {
+            if (memory != null) {
+                RequestBody body = of(new ByteArrayInputStream(memory), length);
+                memory = null;
+                return body;
+            }
+            channel.close();
+            channel = null;
+            RequestBody body = new RequestBody(length, Files.newInputStream(file), file);
+            file = null;
+            return body;
+        }
+
+        // 放弃未收齐的请求体（连接关闭时）
+        @Override
+        public void close() throws IOException {
+            memory = null;
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            if (file != null) {
+                Files.deleteIfExists(file);
+                file = null;
+            }
+        }
+    }
+}
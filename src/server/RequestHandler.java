@@ -2,137 +2,402 @@ package server;
 
 import java.io.*;
 import java.net.Socket;
-import java.net.URLDecoder;
+import java.net.SocketTimeoutException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
-import java.util.Locale;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 public class RequestHandler implements Runnable {
     private final Socket clientSocket;
     private final UserService userService;
+    private final StaticResourceCache staticCache;
     private final int connectionId;
     private OutputStream dataOut;
+    // BIO 模式下的响应缓冲（NIO 引擎为 null）
+    private ResponseBuffer responseBuffer;
+    // 连接内复用的响应头构建器
+    private final HttpResponseWriter responseHead = new HttpResponseWriter();
+    // 当前请求处理完后是否保持连接
+    private boolean keepAlive = false;
+    // 当前连接还可处理的请求数（用于 Keep-Alive: max）
+    private int remainingRequests = 0;
 
-    public RequestHandler(Socket socket, UserService userService, int connectionId) {
+    // 用户列表默认每页条数与上限
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    // 会话令牌的 Cookie 名
+    private static final String SESSION_COOKIE = "SESSION";
+    // 长连接空闲超时（毫秒）
+    static final int KEEP_ALIVE_TIMEOUT_MS = 5000;
+    // 单个连接最多处理的请求数
+    static final int MAX_REQUESTS_PER_CONNECTION = 100;
+    // 密码哈希繁忙时建议客户端重试的秒数
+    private static final int PASSWORD_BUSY_RETRY_SECONDS = 1;
+    // 读缓冲区初始大小
+    private static final int READ_BUFFER_SIZE = 4096;
+    // 响应缓冲区大小：不超过该大小的内存响应体随响应头一起缓冲，流水线请求的响应合并写出
+    private static final int RESPONSE_BUFFER_SIZE = 16 * 1024;
+    // 无法零拷贝时的文件发送缓冲区大小
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+    // BIO 零拷贝发送文件时每次 transferTo 的最大字节数（每段单独计算写出时限）
+    private static final long TRANSFER_CHUNK_BYTES = 1024 * 1024;
+    // 连接内复用的堆外发送缓冲区（按需分配）
+    private ByteBuffer directBuffer;
+    // BIO：当前读阶段（请求头/请求体）与当前阻塞写操作的截止时间，到期由时间轮关闭套接字
+    private TimerWheel.Timeout readDeadline;
+    private TimerWheel.Timeout writeDeadline;
+    // 因超时被关闭时所在的阶段
+    private volatile String timedOutPhase;
+    // 当前请求的响应状态码与响应体字节数（写入访问日志）
+    private int responseStatus;
+    private long responseBytes;
+    private ChunkedOutputStream streamingBody;
+    // 当前请求匹配的路由模式（写入按路由的请求计数）
+    private String routePattern;
+
+    /**
+     * 接口处理器：路由匹配后在处理该请求的 RequestHandler 上调用
+     */
+    @FunctionalInterface
+    private interface Endpoint {
+        void handle(RequestHandler handler, HttpRequestParser request, RequestBody body, Map<String, String> pathParams) throws IOException;
+    }
+
+    // 接口路由表（所有连接共享，类加载时注册完毕后只读）
+    private static final Router<Endpoint> ROUTES = new Router<Endpoint>()
+            // 301永久重定向示例（/old → /new.html）
+            .add(HttpRequestParser.Method.GET, "/old", (h, request, body, params) -> h.sendRedirect(request.protocol(), 301, "/new.html"))
+            // 302临时重定向示例（/temp → /temp-new.html）
+            .add(HttpRequestParser.Method.GET, "/temp", (h, request, body, params) -> h.sendRedirect(request.protocol(), 302, "/temp-new.html"))
+            // 注册接口：POST /register
+            .add(HttpRequestParser.Method.POST, "/register", (h, request, body, params) -> h.handleRegister(body))
+            // 登录接口：POST /login
+            .add(HttpRequestParser.Method.POST, "/login", (h, request, body, params) -> h.handleLogin(body))
+            // 注销接口：POST /logout
+            .add(HttpRequestParser.Method.POST, "/logout", (h, request, body, params) -> h.handleLogout(request))
+            // 用户更新接口：PUT /user
+            .add(HttpRequestParser.Method.PUT, "/user", (h, request, body, params) -> h.handleUpdateUser(request, body))
+            // 用户删除接口：DELETE /user
+            .add(HttpRequestParser.Method.DELETE, "/user", (h, request, body, params) -> h.handleDeleteUser(request, body))
+            // 用户列表接口：GET /users
+            .add(HttpRequestParser.Method.GET, "/users", (h, request, body, params) -> h.handleGetUsers(request))
+            // 运行指标（Prometheus 文本格式）
+            .add(HttpRequestParser.Method.GET, "/metrics", (h, request, body, params) -> h.handleMetrics(request));
+
+    public RequestHandler(Socket socket, UserService userService, StaticResourceCache staticCache, int connectionId) {
         this.clientSocket = socket;
         this.userService = userService;
+        this.staticCache = staticCache;
+        this.connectionId = connectionId;
+    }
+
+    // NIO 引擎使用：请求由事件循环解析，响应写入给定输出流，不直接持有 Socket
+    RequestHandler(OutputStream out, UserService userService, StaticResourceCache staticCache, int connectionId) {
+        this.clientSocket = null;
+        this.userService = userService;
+        this.staticCache = staticCache;
         this.connectionId = connectionId;
+        this.dataOut = out;
     }
 
     @Override
     public void run() {
-        // 1. 将 headers 定义在 try 外部，并初始化默认值
-        Map<String, String> headers = new HashMap<>();
-
+        HttpRequestParser parser = new HttpRequestParser();
         try {
+            // 空闲超时：长连接上等待下一个请求的最长时间
+            clientSocket.setSoTimeout(KEEP_ALIVE_TIMEOUT_MS);
             // 按字节解析请求，避免 Content-Length/字符集不一致导致 POST/中文乱码
-            InputStream input = new BufferedInputStream(clientSocket.getInputStream());
-            dataOut = clientSocket.getOutputStream();
-
-            // 解析HTTP请求行（第一行：Method Path Protocol）
-            String requestLine = readLine(input);
-            if (requestLine == null) return;
-            String[] reqParts = requestLine.split(" ");
-            String method = reqParts[0]; // GET/POST
-            String path = reqParts.length > 1 ? reqParts[1] : "/";   // 请求路径（如/、/login、/register）
-            String protocol = reqParts.length > 2 ? reqParts[2] : "HTTP/1.1"; // HTTP/1.1
-
-            // 解析请求头（提取Connection判断长连接）
-            // 注意：此处复用外部定义的 headers，不再重新声明
-            String headerLine;
-            while ((headerLine = readLine(input)) != null && !headerLine.isEmpty()) {
-                int idx = headerLine.indexOf(':');
-                if (idx > 0) {
-                    String name = headerLine.substring(0, idx).trim().toLowerCase(Locale.ROOT);
-                    String value = headerLine.substring(idx + 1).trim();
-                    headers.put(name, value);
+            InputStream input = clientSocket.getInputStream();
+            // 响应先写入缓冲区，在需要阻塞读取下一个请求前才写出：
+            // 客户端流水线发送的多个请求会依次从读缓冲区解析，它们的响应合并为一次写出
+            responseBuffer = new ResponseBuffer(new TimedOutputStream(clientSocket.getOutputStream()));
+            dataOut = responseBuffer;
+            // 连接内复用的读缓冲区（读模式），请求头直接在其中解析
+            ByteBuffer inBuf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            inBuf.flip();
+
+            int handled = 0;
+            while (!clientSocket.isClosed()) {
+                parser.reset();
+                boolean eof = false;
+                // 请求的第一个字节到达的时间（读缓冲区中已有流水线数据时即为现在）
+                long parseStart = inBuf.hasRemaining() ? System.nanoTime() : 0;
+                try {
+                    while (!parser.parse(inBuf)) {
+                        flushBuffered();
+                        if (readDeadline == null && !parser.isIdle()) {
+                            // 已收到请求的一部分：请求头必须在时限内收齐
+                            readDeadline = armDeadline(ConnectionTimeouts.HEADER_READ,
+                                    ConnectionTimeouts.HEADER_TIMEOUT_MS);
+                        }
+                        inBuf = fill(input, inBuf);
+                        if (inBuf == null) {
+                            eof = true;
+                            break;
+                        }
+                        if (parseStart == 0) {
+                            parseStart = System.nanoTime();
+                        }
+                    }
+                } catch (SocketTimeoutException e) {
+                    if (!parser.isIdle()) throw e;
+                    Log.info("Connection #" + connectionId + " idle timeout");
+                    break;
+                }
+                readDeadline = disarm(readDeadline);
+                if (eof) {
+                    if (!parser.isIdle()) {
+                        Log.warn("Connection #" + connectionId + " closed mid-request");
+                    }
+                    break; // 客户端已关闭连接
                 }
-            }
 
-            // 处理POST请求体（注册/登录需获取表单数据）
-            String requestBody = "";
-            if ("POST".equals(method) && headers.containsKey("content-length")) {
-                long contentLength = Long.parseLong(headers.get("content-length"));
-                byte[] bodyBytes = readFixedBytes(input, contentLength);
-                requestBody = new String(bodyBytes, StandardCharsets.UTF_8);
+                ServerMetrics.PARSE.record(System.nanoTime() - parseStart);
+                handled++;
+                // 请求体以有界流交给处理器（注册/登录/更新/删除从中解析表单），不预先读入内存；
+                // 处理完后读掉未读的部分，否则残留字节会被当作下一个请求解析
+                long contentLength = parser.contentLength();
+                if (expectsContinue(parser) && inBuf.remaining() < contentLength) {
+                    // 客户端等待 100 Continue 才发送请求体
+                    flushBuffered();
+                    writeResponse(ByteBuffer.wrap(HttpResponseWriter.CONTINUE), null);
+                    flushBuffered();
+                }
+                boolean reuse;
+                try (RequestBody requestBody = RequestBody.of(new BodyStream(input, inBuf, contentLength), contentLength)) {
+                    reuse = process(parser, requestBody, handled);
+                } finally {
+                    readDeadline = disarm(readDeadline);
+                }
+                if (!reuse) {
+                    break;
+                }
             }
-
-            // 路由请求（接口/静态资源）
-            handleRoute(method, path, protocol, headers, requestBody);
-
+        } catch (HttpRequestParser.ParseException e) {
+            // 请求格式错误或超出限制
+            keepAlive = false;
+            sendResponse("HTTP/1.1", e.statusCode, e.statusMsg, "text/plain", e.statusMsg, -1);
+        } catch (SocketTimeoutException e) {
+            // 请求读到一半超时，直接关闭连接
+            Log.warn("Connection #" + connectionId + " read timeout");
         } catch (Exception e) {
-            // 500 服务器内部错误
-            System.err.println("Connection #" + connectionId + " error: " + e.getMessage());
-            sendResponse("HTTP/1.1", 500, "Internal Server Error", "text/plain", "Server Error: " + e.getMessage(), -1);
+            if (timedOutPhase != null) {
+                // 超时：套接字已被关闭，不再发送响应
+                Log.warn("Connection #" + connectionId + " " + timedOutPhase + " timeout");
+            } else {
+                Log.error("Connection #" + connectionId + " error: " + e.getMessage());
+                sendServerError(e);
+            }
         } finally {
+            readDeadline = disarm(readDeadline);
             try {
-                // 长连接判断：此时 headers 已在外部初始化，可安全访问
-                if (!"keep-alive".equalsIgnoreCase(headers.getOrDefault("connection", "close"))) {
-                    clientSocket.close();
-                    System.out.println("Connection #" + connectionId + " closed");
-                }
+                flushBuffered();
             } catch (IOException e) {
-                System.err.println("Error closing connection #" + connectionId + ": " + e.getMessage());
+                Log.error("Connection #" + connectionId + " flush error: " + e.getMessage());
             }
             try {
-                if (dataOut != null) dataOut.close();
+                clientSocket.close();
+                Log.info("Connection #" + connectionId + " closed");
             } catch (IOException e) {
-                System.err.println("Error closing output stream for connection #" + connectionId + ": " + e.getMessage());
+                Log.error("Error closing connection #" + connectionId + ": " + e.getMessage());
             }
         }
     }
 
-    // 路由处理：区分注册、登录接口与静态资源
-    private void handleRoute(String method, String path, String protocol, Map<String, String> headers, String body) throws IOException {
-        // 新增：301永久重定向示例（/old → /new）
-        if ("GET".equals(method) && "/old".equals(path)) {
-            sendRedirect(protocol, 301, "/new.html"); // 永久重定向到/new.html
-            return;
+    /**
+     * 从输入流读入更多数据到读缓冲区（缓冲区已满时扩容，上限为请求头最大长度）
+     *
+     * @return 可能是新的缓冲区（读模式）；流已结束返回 null
+     */
+    private static ByteBuffer fill(InputStream input, ByteBuffer inBuf) throws IOException {
+        inBuf.compact();
+        if (!inBuf.hasRemaining()) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(inBuf.capacity() * 2, HttpRequestParser.MAX_HEADER_BYTES + 1));
+            inBuf.flip();
+            bigger.put(inBuf);
+            inBuf = bigger;
+        }
+        int n = input.read(inBuf.array(), inBuf.arrayOffset() + inBuf.position(), inBuf.remaining());
+        if (n == -1) {
+            return null;
         }
+        ServerMetrics.BYTES_IN.add(n);
+        inBuf.position(inBuf.position() + n);
+        inBuf.flip();
+        return inBuf;
+    }
 
-        // 新增：302临时重定向示例（/temp → /temp-new）
-        if ("GET".equals(method) && "/temp".equals(path)) {
-            sendRedirect(protocol, 302, "/temp-new.html"); // 临时重定向到/temp-new.html
-            return;
+    /**
+     * BIO 请求体输入流：先取读缓冲区中已收到的部分，剩余部分直接从套接字读取，最多读出 Content-Length 字节
+     */
+    private final class BodyStream extends InputStream {
+        private final InputStream input;
+        private final ByteBuffer inBuf;
+        private long remaining;
+
+        BodyStream(InputStream input, ByteBuffer inBuf, long length) {
+            this.input = input;
+            this.inBuf = inBuf;
+            this.remaining = Math.max(0, length);
         }
-        
-        // 注册接口：POST /register
-        if ("POST".equals(method) && "/register".equals(path)) {
-            handleRegister(body);
-            return;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
         }
-        
-        // 登录接口：POST /login
-        if ("POST".equals(method) && "/login".equals(path)) {
-            handleLogin(body);
-            return;
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) return -1;
+            if (len == 0) return 0;
+            int want = (int) Math.min(len, remaining);
+            int n;
+            if (inBuf.hasRemaining()) {
+                n = Math.min(want, inBuf.remaining());
+                inBuf.get(b, off, n);
+            } else {
+                // 阻塞读取前先写出已缓冲的响应；请求体按最低传输速率计算读取时限
+                flushBuffered();
+                if (readDeadline == null) {
+                    readDeadline = armDeadline(ConnectionTimeouts.BODY_READ,
+                            ConnectionTimeouts.transferTimeoutMillis(remaining));
+                }
+                n = input.read(b, off, want);
+                if (n == -1) throw new EOFException("Unexpected EOF while reading request body");
+                ServerMetrics.BYTES_IN.add(n);
+            }
+            remaining -= n;
+            if (remaining == 0) {
+                readDeadline = disarm(readDeadline);
+            }
+            return n;
         }
-        
-        // 用户更新接口：PUT /user
-        if ("PUT".equals(method) && "/user".equals(path)) {
-            handleUpdateUser(body);
-            return;
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, inBuf.remaining());
         }
-        
-        // 用户删除接口：DELETE /user
-        if ("DELETE".equals(method) && "/user".equals(path)) {
-            handleDeleteUser(body);
-            return;
+    }
+
+    /**
+     * 检查请求体长度与 Expect 请求头（BIO 与 NIO 引擎共用），在读取请求体之前调用。
+     * 接口路由只接受表单大小的请求体，超出的在发送 100 Continue 之前即被拒绝
+     *
+     * @return 客户端是否在等待 100 Continue
+     * @throws HttpRequestParser.ParseException 请求体超过上限（413）或不支持的 Expect（417）
+     */
+    static boolean expectsContinue(HttpRequestParser request) throws HttpRequestParser.ParseException {
+        long contentLength = request.contentLength();
+        if (contentLength > RequestBody.MAX_BODY_BYTES
+                || (contentLength > RequestBody.MAX_FORM_BYTES && ROUTES.find(request.method(), request.path()) != null)) {
+            throw new HttpRequestParser.ParseException(413, "Payload Too Large");
         }
-        
-        // 用户列表接口：GET /users
-        if ("GET".equals(method) && "/users".equals(path)) {
-            handleGetUsers();
+        String expect = request.header(HttpRequestParser.Header.EXPECT);
+        if (expect == null || request.isHttp10()) {
+            return false;
+        }
+        if (!"100-continue".equalsIgnoreCase(expect.trim())) {
+            throw new HttpRequestParser.ParseException(417, "Expectation Failed");
+        }
+        return request.contentLength() > 0;
+    }
+
+    /**
+     * 处理一个已完整解析的请求并写出响应（BIO 与 NIO 引擎共用）
+     *
+     * @param request 已完成解析的请求头
+     * @param handled 当前连接已处理的请求数（含本次）
+     * @return 是否继续复用该连接
+     */
+    boolean process(HttpRequestParser request, RequestBody body, int handled) throws IOException {
+        // 长连接判断：达到单连接请求上限或服务器正在停止时，本次响应后关闭
+        remainingRequests = MAX_REQUESTS_PER_CONNECTION - handled;
+        keepAlive = isKeepAliveRequested(request)
+                && remainingRequests > 0
+                && HttpServer.isRunning();
+
+        long start = System.nanoTime();
+        responseStatus = 0;
+        responseBytes = 0;
+        streamingBody = null;
+        routePattern = ServerMetrics.STATIC_ROUTE;
+        try {
+            // 路由请求（接口/静态资源）
+            handleRoute(request.methodName(), request.path(), request.protocol(), request, body);
+        } finally {
+            if (!keepAlive) {
+                // 连接不再复用：不必读掉剩余请求体
+                body.discard();
+            }
+            long elapsed = System.nanoTime() - start;
+            // 尚未开始响应就抛出异常的请求由调用方返回 500
+            int status = responseStatus != 0 ? responseStatus : 500;
+            ServerMetrics.recordRequest(request.method(), routePattern, status, elapsed);
+            AccessLog accessLog = HttpServer.getAccessLog();
+            if (accessLog != null) {
+                if (streamingBody != null) {
+                    responseBytes += streamingBody.bytesWritten();
+                }
+                accessLog.record(connectionId, request.methodName(), request.path(), status, responseBytes, elapsed);
+            }
+        }
+        return keepAlive;
+    }
+
+    // 500 服务器内部错误，出错后不再复用该连接
+    void sendServerError(Exception e) {
+        keepAlive = false;
+        sendResponse("HTTP/1.1", 500, "Internal Server Error", "text/plain", "Server Error: " + e.getMessage(), -1);
+    }
+
+    // HTTP/1.1 默认长连接（除非 Connection: close）；HTTP/1.0 需显式 Connection: keep-alive
+    private static boolean isKeepAliveRequested(HttpRequestParser request) {
+        if (request.isHttp10()) {
+            return request.headerContainsToken(HttpRequestParser.Header.CONNECTION, "keep-alive");
+        }
+        return !request.headerContainsToken(HttpRequestParser.Header.CONNECTION, "close");
+    }
+
+    // 开始构建响应头：状态行与 Connection / Keep-Alive 响应头
+    private HttpResponseWriter beginResponse(String protocol, int statusCode, String statusMsg) {
+        responseStatus = statusCode;
+        return responseHead.status(protocol, statusCode, statusMsg).connection(keepAlive, remainingRequests);
+    }
+
+    // 路由处理：先查接口路由表，未命中的按静态资源处理
+    private void handleRoute(String method, String path, String protocol, HttpRequestParser request, RequestBody body) throws IOException {
+        Router.Match<Endpoint> route = ROUTES.find(request.method(), path);
+        if (route != null) {
+            routePattern = route.pattern;
+            try {
+                route.handler.handle(this, request, body, route.params);
+            } catch (RejectedExecutionException e) {
+                // 密码哈希线程池已满：快速失败，不占用工作线程排队
+                sendServiceUnavailable(protocol, PASSWORD_BUSY_RETRY_SECONDS);
+            } catch (HttpRequestParser.ParseException e) {
+                // 请求体超出接口限制（413）：不再读取剩余请求体，响应后关闭连接
+                keepAlive = false;
+                sendResponse(protocol, e.statusCode, e.statusMsg, "text/plain", e.statusMsg, -1);
+            }
             return;
         }
-        
+
         // 静态资源请求（如GET /index.html、/image.jpg）
-        handleStaticResource(method, path, protocol, headers);
+        handleStaticResource(method, path, protocol, request);
     }
 
     // 处理注册：解析表单（username=xxx&password=xxx），内存存储用户
-    private void handleRegister(String body) {
+    private void handleRegister(RequestBody body) throws IOException {
         //test code 500
         //throw new RuntimeException("This is a test for 500 Internal Server Error!");
         Map<String, String> params = parseFormParams(body);
@@ -150,62 +415,182 @@ public class RequestHandler implements Runnable {
         }
     }
 
-    // 处理登录：验证用户名密码
-    private void handleLogin(String body) {
+    // 处理登录：验证用户名密码，成功后签发会话 Cookie（提交了凭据就必须校验，已有会话不能代替密码）
+    private void handleLogin(RequestBody body) throws IOException {
         Map<String, String> params = parseFormParams(body);
         String username = params.get("username");
         String password = params.get("password");
 
-        if (userService.login(username, password)) {
-            sendResponse("HTTP/1.1", 200, "OK", "text/plain", "Login Success: Welcome " + username, -1);
+        String token = userService.loginSession(username, password);
+        if (token != null) {
+            sendWithCookie(200, "OK", "Login Success: Welcome " + username, sessionCookie(token));
         } else {
             sendResponse("HTTP/1.1", 401, "Unauthorized", "text/plain", "Login Failed: Invalid username or password", -1);
         }
     }
-    
-    // 处理用户更新：PUT /user
-    private void handleUpdateUser(String body) {
+
+    // 处理注销：POST /logout，作废会话并清除 Cookie
+    private void handleLogout(HttpRequestParser request) {
+        userService.logout(sessionToken(request));
+        sendWithCookie(200, "OK", "Logout Success", expiredSessionCookie());
+    }
+
+    // 处理用户更新：PUT /user（持有会话时用户名取自会话，只能修改本人）
+    private void handleUpdateUser(HttpRequestParser request, RequestBody body) throws IOException {
         Map<String, String> params = parseFormParams(body);
+        String token = sessionToken(request);
+        String sessionUser = userService.sessionUser(token);
         String username = params.get("username");
         String newPassword = params.get("newPassword");
-        
+
+        if (sessionUser != null) {
+            if (username == null || username.isEmpty()) {
+                username = sessionUser;
+            } else if (!username.equals(sessionUser)) {
+                sendResponse("HTTP/1.1", 403, "Forbidden", "text/plain", "Session does not belong to user: " + username, -1);
+                return;
+            }
+        }
         if (username == null || newPassword == null || username.isEmpty() || newPassword.isEmpty()) {
             sendResponse("HTTP/1.1", 400, "Bad Request", "text/plain", "Username and newPassword are required", -1);
             return;
         }
         
         if (userService.updateUser(username, newPassword)) {
-            sendResponse("HTTP/1.1", 200, "OK", "text/plain", "User updated successfully: " + username, -1);
+            String message = "User updated successfully: " + username;
+            // 改密后旧会话失效，为本会话换发新令牌
+            String renewed = sessionUser == null ? null : userService.renewSession(token, username);
+            if (renewed != null) {
+                sendWithCookie(200, "OK", message, sessionCookie(renewed));
+            } else {
+                sendResponse("HTTP/1.1", 200, "OK", "text/plain", message, -1);
+            }
         } else {
             sendResponse("HTTP/1.1", 404, "Not Found", "text/plain", "User not found: " + username, -1);
         }
     }
     
-    // 处理用户删除：DELETE /user
-    private void handleDeleteUser(String body) {
+    // 处理用户删除：DELETE /user（持有会话时用户名取自会话，只能删除本人）
+    private void handleDeleteUser(HttpRequestParser request, RequestBody body) throws IOException {
         Map<String, String> params = parseFormParams(body);
+        String token = sessionToken(request);
+        String sessionUser = userService.sessionUser(token);
         String username = params.get("username");
-        
+
+        if (sessionUser != null) {
+            if (username == null || username.isEmpty()) {
+                username = sessionUser;
+            } else if (!username.equals(sessionUser)) {
+                sendResponse("HTTP/1.1", 403, "Forbidden", "text/plain", "Session does not belong to user: " + username, -1);
+                return;
+            }
+        }
         if (username == null || username.isEmpty()) {
             sendResponse("HTTP/1.1", 400, "Bad Request", "text/plain", "Username is required", -1);
             return;
         }
         
         if (userService.deleteUser(username)) {
-            sendResponse("HTTP/1.1", 200, "OK", "text/plain", "User deleted successfully: " + username, -1);
+            String message = "User deleted successfully: " + username;
+            if (sessionUser != null) {
+                userService.logout(token);
+                sendWithCookie(200, "OK", message, expiredSessionCookie());
+            } else {
+                sendResponse("HTTP/1.1", 200, "OK", "text/plain", message, -1);
+            }
         } else {
             sendResponse("HTTP/1.1", 404, "Not Found", "text/plain", "User not found: " + username, -1);
         }
     }
+
+    // 从 Cookie 请求头取出会话令牌，没有时返回 null
+    private static String sessionToken(HttpRequestParser request) {
+        String cookies = request.header(HttpRequestParser.Header.COOKIE);
+        if (cookies == null) {
+            return null;
+        }
+        // Cookie: a=1; SESSION=xxx; b=2
+        int p = 0;
+        while (p < cookies.length()) {
+            int end = cookies.indexOf(';', p);
+            if (end < 0) end = cookies.length();
+            int eq = cookies.indexOf('=', p);
+            if (eq > 0 && eq < end && cookies.substring(p, eq).trim().equals(SESSION_COOKIE)) {
+                return cookies.substring(eq + 1, end).trim();
+            }
+            p = end + 1;
+        }
+        return null;
+    }
+
+    private String sessionCookie(String token) {
+        return SESSION_COOKIE + "=" + token + "; Path=/; Max-Age=" + userService.sessionMaxAgeSeconds()
+                + "; HttpOnly; SameSite=Strict";
+    }
+
+    private static String expiredSessionCookie() {
+        return SESSION_COOKIE + "=; Path=/; Max-Age=0; HttpOnly; SameSite=Strict";
+    }
     
-    // 处理获取用户列表：GET /users
-    private void handleGetUsers() {
-        String userList = userService.getUserList();
-        sendResponse("HTTP/1.1", 200, "OK", "text/plain", userList, -1);
+    /**
+     * 处理获取用户列表：GET /users?prefix=&after=&limit=
+     * <p>
+     * 按用户名顺序分页返回，after 为上一页最后一个用户名（游标）；
+     * 结果边遍历索引边以分块传输编码写出，不在内存中拼出整个列表。还有下一页时最后一行给出游标。
+     */
+    private void handleGetUsers(HttpRequestParser request) throws IOException {
+        String path = request.path();
+        int q = path.indexOf('?');
+        Map<String, String> query = parseFormParams(q < 0 ? "" : path.substring(q + 1));
+        String prefix = query.getOrDefault("prefix", "");
+        String after = query.get("after");
+        int limit;
+        try {
+            limit = Integer.parseInt(query.getOrDefault("limit", String.valueOf(DEFAULT_PAGE_SIZE)));
+        } catch (NumberFormatException e) {
+            limit = -1;
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            sendResponse("HTTP/1.1", 400, "Bad Request", "text/plain", "limit must be between 1 and " + MAX_PAGE_SIZE, -1);
+            return;
+        }
+
+        Iterator<String> users = userService.listUsers(prefix, after);
+        try (OutputStream out = beginStreamingResponse(request.protocol(), 200, "OK", "text/plain")) {
+            writeUserPage(out, users, prefix, after, limit);
+        }
+    }
+
+    // 输出运行指标：Prometheus 文本格式 0.0.4
+    private void handleMetrics(HttpRequestParser request) throws IOException {
+        byte[] body = ServerMetrics.render().getBytes(StandardCharsets.UTF_8);
+        writeResponse(beginResponse(request.protocol(), 200, "OK")
+                .contentType("text/plain; version=0.0.4; charset=utf-8")
+                .contentLength(body.length)
+                .finish(), ByteBuffer.wrap(body));
+    }
+
+    private static void writeUserPage(OutputStream out, Iterator<String> users, String prefix, String after, int limit)
+            throws IOException {
+        if (!users.hasNext() && after == null) {
+            out.write((prefix.isEmpty() ? "No users registered" : "No users match prefix: " + prefix)
+                    .getBytes(StandardCharsets.UTF_8));
+        } else {
+            out.write("Registered users:\n".getBytes(StandardCharsets.UTF_8));
+            String last = null;
+            for (int i = 0; i < limit && users.hasNext(); i++) {
+                last = users.next();
+                out.write(("- " + last + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            if (users.hasNext()) {
+                out.write(("Next: after=" + URLEncoder.encode(last, StandardCharsets.UTF_8) + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        }
     }
 
     // 处理静态资源（支持304缓存、404不存在、MIME类型）
-    private void handleStaticResource(String method, String path, String protocol, Map<String, String> headers) throws IOException {
+    private void handleStaticResource(String method, String path, String protocol, HttpRequestParser request) throws IOException {
         // 支持GET和HEAD请求获取静态资源，其他方法返回405
         if (!"GET".equals(method) && !"HEAD".equals(method)) {
             sendResponse(protocol, 405, "Method Not Allowed", "text/plain", "Method " + method + " Not Allowed", -1);
@@ -214,56 +599,340 @@ public class RequestHandler implements Runnable {
 
         // 根路径默认指向index.html
         if ("/".equals(path)) path = "/index.html";
-        // 静态资源存放路径（项目根目录下的static文件夹）
-        // 额外做一次路径规范化，避免 ../ 路径穿越读取静态目录外文件
-        File staticRoot = new File("static").getCanonicalFile();
-        File requested = new File(staticRoot, path.startsWith("/") ? path.substring(1) : path).getCanonicalFile();
-        if (!requested.getPath().startsWith(staticRoot.getPath())) {
+
+        // 请求路径按词法规范化后解析到静态目录（项目根目录下的static文件夹）下，../ 越出目录时返回 403；
+        // 同一文件的不同写法共用一个缓存条目，命中时不访问文件系统
+        Path resolved = staticCache.resolve(path);
+        if (resolved == null) {
             sendResponse(protocol, 403, "Forbidden", "text/plain", "Forbidden", -1);
             return;
         }
-        File resourceFile = requested;
+        StaticResourceCache.Entry entry = staticCache.get(resolved);
+        if (entry == null) {
+            // 未命中时再按文件系统规范化（解析符号链接），避免经链接读取静态目录外文件
+            File resourceFile = resolved.toFile().getCanonicalFile();
+            if (!staticCache.contains(resourceFile.toPath())) {
+                sendResponse(protocol, 403, "Forbidden", "text/plain", "Forbidden", -1);
+                return;
+            }
+
+            // 404：资源不存在
+            if (!resourceFile.exists() || !resourceFile.isFile()) {
+                sendResponse(protocol, 404, "Not Found", "text/plain", "Resource Not Found: " + path, -1);
+                return;
+            }
+            entry = staticCache.load(resourceFile);
+        }
 
-        // 404：资源不存在
-        if (!resourceFile.exists() || !resourceFile.isFile()) {
-            sendResponse(protocol, 404, "Not Found", "text/plain", "Resource Not Found: " + path, -1);
+        // 按 Accept-Encoding 选择压缩变体（各变体 ETag 不同）
+        StaticResourceCache.Variant variant =
+                entry.select(StaticResourceCache.negotiateEncoding(request.header(HttpRequestParser.Header.ACCEPT_ENCODING)));
+
+        // 304：资源未修改（If-None-Match 优先，其次 If-Modified-Since）
+        if (isNotModified(request, entry, variant)) {
+            sendNotModified(protocol, variant);
             return;
         }
 
-        // 304：资源未修改（根据If-Modified-Since判断）
-        String ifModifiedSince = headers.get("if-modified-since");
-        long lastModified = resourceFile.lastModified();
-        if (ifModifiedSince != null && !ifModifiedSince.isEmpty()) {
-            try {
-                long clientLastModified = Long.parseLong(ifModifiedSince); // 直接转毫秒
-                if (lastModified <= clientLastModified) {
-                    sendResponse(protocol, 304, "Not Modified", null, null, -1);
+        // 206/416：Range 请求（仅 GET，只针对原始内容）；If-Range 与当前版本不符时返回完整内容
+        String rangeHeader = request.header(HttpRequestParser.Header.RANGE);
+        if (rangeHeader != null && "GET".equals(method)) {
+            String ifRange = request.header(HttpRequestParser.Header.IF_RANGE);
+            if (ifRange == null || ifRange.equals(entry.identity.etag) || ifRange.equals(entry.lastModifiedHttp)) {
+                List<ByteRange> ranges = ByteRange.parse(rangeHeader, entry.identity.length);
+                if (ranges != null) {
+                    sendRanges(protocol, entry, ranges);
                     return;
                 }
-            } catch (NumberFormatException e) {
-                // 客户端传的不是数字，忽略缓存逻辑
-                System.err.println("Invalid If-Modified-Since (not a number): " + ifModifiedSince);
             }
         }
 
+        // 200：返回资源（带MIME类型、Last-Modified头，固定部分已预先序列化）
+        ByteBuffer head = beginResponse(protocol, 200, "OK").raw(variant.headerBytes).finish();
 
-        // 200：返回资源（带MIME类型、Last-Modified头）
-        String mimeType = MimeUtils.getMimeType(path);
-        sendStaticFileHeaders(protocol, 200, "OK", mimeType, resourceFile.length(), lastModified);
-        
         // 如果是HEAD方法，只返回头部不返回内容
         if ("HEAD".equals(method)) {
+            writeResponse(head, null);
             return;
         }
-        
-        // 写入资源文件内容（按字节流式输出）
-        try (FileInputStream fis = new FileInputStream(resourceFile)) {
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = fis.read(buffer)) != -1) {
-                dataOut.write(buffer, 0, len);
+
+        // 写入资源文件内容：已缓存的与响应头一起写出，大文件零拷贝发送
+        ByteBuffer body = variant.body();
+        if (body != null) {
+            writeResponse(head, body);
+        } else {
+            writeResponse(head, null);
+            FileChannel file = FileChannel.open(variant.file.toPath(), StandardOpenOption.READ);
+            sendFileBody(file, 0, variant.length);
+        }
+    }
+
+    // 条件请求判断：If-None-Match 使用弱比较；If-Modified-Since 按秒比较
+    private static boolean isNotModified(HttpRequestParser request, StaticResourceCache.Entry entry,
+                                         StaticResourceCache.Variant variant) {
+        String ifNoneMatch = request.header(HttpRequestParser.Header.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return etagMatches(ifNoneMatch, variant.etag);
+        }
+        String ifModifiedSince = request.header(HttpRequestParser.Header.IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null || ifModifiedSince.isEmpty()) {
+            return false;
+        }
+        long since = HttpDateUtils.parse(ifModifiedSince);
+        if (since < 0) {
+            try {
+                since = Long.parseLong(ifModifiedSince); // 兼容旧版客户端发送的毫秒时间戳
+            } catch (NumberFormatException e) {
+                // 无法识别的日期，忽略缓存逻辑
+                Log.warn("Invalid If-Modified-Since: " + ifModifiedSince);
+                return false;
             }
-            dataOut.flush();
+        }
+        return entry.lastModified / 1000 <= since / 1000;
+    }
+
+    // If-None-Match 可以是 * 或逗号分隔的 ETag 列表，弱比较时忽略 W/ 前缀
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if ("*".equals(tag)) return true;
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    // 304 响应：不带响应体，回传校验值供客户端更新缓存
+    private void sendNotModified(String protocol, StaticResourceCache.Variant variant) throws IOException {
+        writeResponse(beginResponse(protocol, 304, "Not Modified")
+                .raw(variant.notModifiedHeaderBytes)
+                .finish(), null);
+    }
+
+    /**
+     * 发送部分内容：单区间直接返回 206，多区间使用 multipart/byteranges，全部不可满足返回 416
+     */
+    private void sendRanges(String protocol, StaticResourceCache.Entry entry, List<ByteRange> ranges) throws IOException {
+        StaticResourceCache.Variant variant = entry.identity;
+        long total = variant.length;
+
+        if (ranges.isEmpty()) {
+            writeResponse(beginResponse(protocol, 416, "Range Not Satisfiable")
+                    .header(HttpResponseWriter.CONTENT_RANGE, "bytes */" + total)
+                    .contentLength(0)
+                    .finish(), null);
+            return;
+        }
+
+        HttpResponseWriter head = beginResponse(protocol, 206, "Partial Content")
+                .header(HttpResponseWriter.ACCEPT_RANGES, "bytes")
+                .header(HttpResponseWriter.ETAG, variant.etag)
+                .header(HttpResponseWriter.LAST_MODIFIED, entry.lastModifiedHttp);
+
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            head.contentType(entry.mimeType)
+                    .header(HttpResponseWriter.CONTENT_RANGE, range.contentRange(total))
+                    .contentLength(range.length());
+            sendRangeBody(head.finish(), variant, range);
+            return;
+        }
+
+        // 多区间：每段前写分段头，先算出总长度以便给出 Content-Length
+        String boundary = "HTTPProject" + Long.toHexString(System.nanoTime());
+        byte[][] partHeaders = new byte[ranges.size()][];
+        long contentLength = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            ByteRange range = ranges.get(i);
+            String partHeader = "\r\n--" + boundary + "\r\n"
+                    + "Content-Type: " + entry.mimeType + "\r\n"
+                    + "Content-Range: " + range.contentRange(total) + "\r\n\r\n";
+            partHeaders[i] = partHeader.getBytes(StandardCharsets.UTF_8);
+            contentLength += partHeaders[i].length + range.length();
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        contentLength += closing.length;
+
+        // 每次响应的分隔符不同，不走 MIME 类型模板缓存
+        head.header(HttpResponseWriter.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary)
+                .contentLength(contentLength);
+        writeResponse(head.finish(), null);
+        for (int i = 0; i < ranges.size(); i++) {
+            sendRangeBody(ByteBuffer.wrap(partHeaders[i]), variant, ranges.get(i));
+        }
+        writeResponse(ByteBuffer.wrap(closing), null);
+    }
+
+    // 发送一个区间的内容（前面带上 head）：已缓存的取缓冲区切片，否则按偏移零拷贝发送文件
+    private void sendRangeBody(ByteBuffer head, StaticResourceCache.Variant variant, ByteRange range) throws IOException {
+        ByteBuffer body = variant.body();
+        if (body != null) {
+            body.limit((int) (range.end + 1));
+            body.position((int) range.start);
+            writeResponse(head, body.slice());
+        } else {
+            writeResponse(head, null);
+            FileChannel file = FileChannel.open(variant.file.toPath(), StandardOpenOption.READ);
+            sendFileBody(file, range.start, range.length());
+        }
+    }
+
+    /**
+     * 写出响应头与内存中的响应体（堆内或堆外缓冲区）
+     * <p>
+     * BIO 下两者一起进入响应缓冲，放不下时与已缓冲的数据合并为一次聚集写；
+     * NIO 下交给事件循环，与相邻的缓冲区一起聚集写出。
+     *
+     * @param head 响应头（或其他需先写出的字节），可为 null
+     * @param body 响应体，可为 null
+     */
+    private void writeResponse(ByteBuffer head, ByteBuffer body) throws IOException {
+        if (body != null) {
+            responseBytes += body.remaining();
+        }
+        if (responseBuffer != null) {
+            responseBuffer.write(head, body, clientSocket.getChannel());
+            return;
+        }
+        if (head != null) {
+            dataOut.write(head.array(), head.arrayOffset() + head.position(), head.remaining());
+        }
+        if (body != null) {
+            if (dataOut instanceof FileTransferSink) {
+                // NIO 引擎：响应体不复制，直接排入事件循环的发送队列
+                ((FileTransferSink) dataOut).transferBuffer(body);
+            } else if (body.hasArray()) {
+                dataOut.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            } else {
+                byte[] buffer = new byte[body.remaining()];
+                body.get(buffer);
+                dataOut.write(buffer);
+            }
+        }
+        dataOut.flush();
+    }
+
+    /**
+     * 发送文件区间作为响应体，调用后文件通道由本方法负责关闭
+     * <p>
+     * 优先使用 {@link FileChannel#transferTo} 直接从页缓存写入套接字（Linux 下为 sendfile），
+     * 避免用户态拷贝；无法零拷贝时退回到可复用的大缓冲区读写。
+     */
+    private void sendFileBody(FileChannel file, long position, long count) throws IOException {
+        responseBytes += count;
+        // NIO 引擎：交给事件循环发送
+        if (dataOut instanceof FileTransferSink) {
+            ((FileTransferSink) dataOut).transferFile(file, position, count);
+            return;
+        }
+
+        try (FileChannel source = file) {
+            flushBuffered();
+            SocketChannel channel = clientSocket != null ? clientSocket.getChannel() : null;
+            long end = position + count;
+            if (channel != null) {
+                // 直接写通道不经过 TimedOutputStream：分段发送，每段按最低传输速率设置截止时间
+                while (position < end) {
+                    long chunk = Math.min(end - position, TRANSFER_CHUNK_BYTES);
+                    writeDeadline = armDeadline(ConnectionTimeouts.RESPONSE_WRITE,
+                            ConnectionTimeouts.transferTimeoutMillis(chunk));
+                    long start = System.nanoTime();
+                    long n = source.transferTo(position, chunk, channel);
+                    writeDeadline = disarm(writeDeadline);
+                    ServerMetrics.WRITE.record(System.nanoTime() - start);
+                    if (n <= 0) break; // 不支持或文件被截断，改用缓冲区拷贝
+                    ServerMetrics.BYTES_OUT.add(n);
+                    position += n;
+                }
+            }
+            if (position >= end) return;
+
+            if (channel != null) {
+                // 直接缓冲区：读写都在内核与堆外内存之间进行
+                if (directBuffer == null) {
+                    directBuffer = ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE);
+                }
+                while (position < end) {
+                    directBuffer.clear();
+                    directBuffer.limit((int) Math.min(directBuffer.capacity(), end - position));
+                    int n = source.read(directBuffer, position);
+                    if (n == -1) throw new EOFException("File truncated while sending");
+                    directBuffer.flip();
+                    writeDeadline = armDeadline(ConnectionTimeouts.RESPONSE_WRITE,
+                            ConnectionTimeouts.transferTimeoutMillis(n));
+                    long start = System.nanoTime();
+                    while (directBuffer.hasRemaining()) {
+                        channel.write(directBuffer);
+                    }
+                    writeDeadline = disarm(writeDeadline);
+                    ServerMetrics.WRITE.record(System.nanoTime() - start);
+                    ServerMetrics.BYTES_OUT.add(n);
+                    position += n;
+                }
+            } else {
+                // 仅有输出流时使用堆缓冲区
+                byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+                ByteBuffer heapBuffer = ByteBuffer.wrap(buffer);
+                while (position < end) {
+                    heapBuffer.clear();
+                    heapBuffer.limit((int) Math.min(buffer.length, end - position));
+                    int n = source.read(heapBuffer, position);
+                    if (n == -1) throw new EOFException("File truncated while sending");
+                    dataOut.write(buffer, 0, n);
+                    position += n;
+                }
+                dataOut.flush();
+            }
+        } finally {
+            writeDeadline = disarm(writeDeadline);
+        }
+    }
+
+    // 503：服务繁忙，提示客户端稍后重试
+    private void sendServiceUnavailable(String protocol, int retryAfterSeconds) throws IOException {
+        byte[] body = "Server busy, please retry later".getBytes(StandardCharsets.UTF_8);
+        writeResponse(beginResponse(protocol, 503, "Service Unavailable")
+                .header(HttpResponseWriter.RETRY_AFTER, retryAfterSeconds)
+                .contentType("text/plain")
+                .contentLength(body.length)
+                .finish(), ByteBuffer.wrap(body));
+    }
+
+    /**
+     * 开始流式响应：写出响应头，返回响应体输出流，调用方边生成边写入，写完后必须 close()
+     * <p>
+     * 响应体不需要事先知道长度：HTTP/1.1 使用分块传输编码，每攒满一个块（{@link ChunkedOutputStream#CHUNK_SIZE}）写出一次，
+     * 内存占用与响应总大小无关；HTTP/1.0 不支持分块，响应体按原样写出，本次响应后关闭连接。
+     * close() 只结束响应体，不关闭连接。
+     */
+    OutputStream beginStreamingResponse(String protocol, int statusCode, String statusMsg, String mimeType) throws IOException {
+        boolean chunked = !"HTTP/1.0".equals(protocol);
+        if (!chunked) {
+            keepAlive = false;
+        }
+        HttpResponseWriter head = beginResponse(protocol, statusCode, statusMsg);
+        if (mimeType != null) {
+            head.contentType(mimeType);
+        }
+        if (chunked) {
+            head.header(HttpResponseWriter.TRANSFER_ENCODING, "chunked");
+        }
+        writeResponse(head.finish(), null);
+        streamingBody = new ChunkedOutputStream(dataOut, chunked);
+        return streamingBody;
+    }
+
+    // 带 Set-Cookie 的纯文本响应（会话接口使用）
+    private void sendWithCookie(int statusCode, String statusMsg, String body, String cookie) {
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        try {
+            writeResponse(beginResponse("HTTP/1.1", statusCode, statusMsg)
+                    .header(HttpResponseWriter.SET_COOKIE, cookie)
+                    .contentType("text/plain")
+                    .contentLength(bodyBytes.length)
+                    .finish(), ByteBuffer.wrap(bodyBytes));
+        } catch (IOException e) {
+            Log.error("Connection #" + connectionId + " send error: " + e.getMessage());
         }
     }
 
@@ -271,71 +940,87 @@ public class RequestHandler implements Runnable {
     private void sendResponse(String protocol, int statusCode, String statusMsg, String mimeType, String body, long lastModified) {
         byte[] bodyBytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
 
-        // 1. 响应状态行
-        StringBuilder response = new StringBuilder();
-        response.append(protocol).append(" ").append(statusCode).append(" ").append(statusMsg).append("\r\n");
+        // 1. 响应状态行与长连接响应头（字节模板）
+        HttpResponseWriter head = beginResponse(protocol, statusCode, statusMsg);
 
-        // 2. 响应头（长连接、MIME类型、内容长度等）
-        response.append("Connection: keep-alive\r\n"); // 支持长连接
+        // 2. MIME类型、内容长度等响应头
         if (mimeType != null) {
-            response.append("Content-Type: ").append(mimeType).append("\r\n");
+            head.contentType(mimeType);
         }
         // 始终带 Content-Length，方便客户端按字节读取（包含 body=null 的情况）
-        response.append("Content-Length: ").append(bodyBytes.length).append("\r\n");
+        head.contentLength(bodyBytes.length);
         // 静态资源添加Last-Modified头（用于304判断）
         if (lastModified != -1) {
-            response.append("Last-Modified: ").append(lastModified).append("\r\n"); // 纯数字毫秒
+            head.header(HttpResponseWriter.LAST_MODIFIED, HttpDateUtils.format(lastModified));
         }
 
-
-        // 3. 空行（分隔头与体）
-        response.append("\r\n");
-
-        // 4. 响应体（如存在）
-        byte[] headerBytes = response.toString().getBytes(StandardCharsets.UTF_8);
+        // 3. 响应头（含结尾空行）与响应体一次写出
         try {
-            dataOut.write(headerBytes);
-            if (bodyBytes.length > 0) {
-                dataOut.write(bodyBytes);
-            }
-            dataOut.flush();
+            writeResponse(head.finish(), bodyBytes.length > 0 ? ByteBuffer.wrap(bodyBytes) : null);
         } catch (IOException e) {
             // 如果发送失败，这里只记录并让线程结束
-            e.printStackTrace();
+            Log.error("Connection #" + connectionId + " send error: " + e.getMessage());
         }
     }
 
-    private void sendStaticFileHeaders(String protocol, int statusCode, String statusMsg,
-                                        String mimeType, long contentLength, long lastModified) throws IOException {
-        StringBuilder response = new StringBuilder();
-        response.append(protocol).append(" ").append(statusCode).append(" ").append(statusMsg).append("\r\n");
-        response.append("Connection: keep-alive\r\n");
-        if (mimeType != null) {
-            response.append("Content-Type: ").append(mimeType).append("\r\n");
+
+    /**
+     * 解析表单请求体（username=xxx&password=xxx → Map），边读边解码，不把请求体读成字符串
+     *
+     * @throws HttpRequestParser.ParseException 请求体超过表单上限（413）
+     */
+    private static Map<String, String> parseFormParams(RequestBody body) throws IOException {
+        if (body.length() > RequestBody.MAX_FORM_BYTES) {
+            throw new HttpRequestParser.ParseException(413, "Payload Too Large");
         }
-        response.append("Content-Length: ").append(contentLength).append("\r\n");
-        if (lastModified != -1) {
-            response.append("Last-Modified: ").append(lastModified).append("\r\n");
+        return parseFormParams(body.stream());
+    }
+
+    // 解析查询字符串（格式与表单相同）
+    private static Map<String, String> parseFormParams(String query) {
+        try {
+            return parseFormParams(new ByteArrayInputStream(query.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // 内存流不会出错
         }
-        response.append("\r\n");
-        dataOut.write(response.toString().getBytes(StandardCharsets.UTF_8));
-        dataOut.flush();
     }
 
-    // 解析POST表单参数（username=xxx&password=xxx → Map）
-    private Map<String, String> parseFormParams(String body) {
+    // 按 application/x-www-form-urlencoded 逐字节解码：'+' 为空格，%XX 为一个字节，键值按 UTF-8 解码
+    private static Map<String, String> parseFormParams(InputStream in) throws IOException {
         Map<String, String> params = new HashMap<>();
-        if (body.isEmpty()) return params;
-        String[] pairs = body.split("&", -1);
-        for (String pair : pairs) {
-            if (pair.isEmpty()) continue;
-            String[] keyVal = pair.split("=", 2);
-            String rawKey = keyVal.length >= 1 ? keyVal[0] : "";
-            String rawVal = keyVal.length == 2 ? keyVal[1] : "";
-            String key = URLDecoder.decode(rawKey, StandardCharsets.UTF_8);
-            String val = URLDecoder.decode(rawVal, StandardCharsets.UTF_8);
-            params.put(key, val);
-        }
+        ByteArrayOutputStream key = new ByteArrayOutputStream(32);
+        ByteArrayOutputStream value = new ByteArrayOutputStream(64);
+        ByteArrayOutputStream current = key;
+        InputStream buffered = new BufferedInputStream(in, 1024);
+        int b;
+        do {
+            b = buffered.read();
+            if (b == -1 || b == '&') {
+                if (key.size() > 0 || value.size() > 0) {
+                    params.put(key.toString(StandardCharsets.UTF_8), value.toString(StandardCharsets.UTF_8));
+                }
+                key.reset();
+                value.reset();
+                current = key;
+            } else if (b == '=' && current == key) {
+                current = value;
+            } else if (b == '+') {
+                current.write(' ');
+            } else if (b == '%') {
+                buffered.mark(2);
+                int hi = HexCodec.digit(buffered.read());
+                int lo = HexCodec.digit(buffered.read());
+                if (hi < 0 || lo < 0) {
+                    // 不完整的转义按原样保留
+                    buffered.reset();
+                    current.write('%');
+                } else {
+                    current.write((hi << 4) | lo);
+                }
+            } else {
+                current.write(b);
+            }
+        } while (b != -1);
         return params;
     }
 
@@ -353,48 +1038,198 @@ public class RequestHandler implements Runnable {
         }
 
         // 构建响应行和响应头
-        StringBuilder response = new StringBuilder();
-        response.append(protocol).append(" ").append(statusCode).append(" ")
-                .append(statusCode == 301 ? "Moved Permanently" : "Found").append("\r\n");
-        response.append("Location: ").append(location).append("\r\n"); // 重定向目标URL
-        response.append("Connection: keep-alive\r\n"); // 保持长连接支持
-        response.append("Content-Length: 0\r\n");
-        response.append("\r\n"); // 空行结束头部分
+        HttpResponseWriter head = beginResponse(protocol, statusCode, statusCode == 301 ? "Moved Permanently" : "Found")
+                .header(HttpResponseWriter.LOCATION, location) // 重定向目标URL
+                .contentLength(0);
 
         try {
-            dataOut.write(response.toString().getBytes(StandardCharsets.UTF_8));
-            dataOut.flush();
+            writeResponse(head.finish(), null);
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.error("Connection #" + connectionId + " send error: " + e.getMessage());
         }
     }
 
-    // 读取一行（以 CRLF 结束），并按 ISO-8859-1 解码为字符串
-    private static String readLine(InputStream in) throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream(128);
-        int b;
-        while ((b = in.read()) != -1) {
-            if (b == '\n') break;
-            if (b == '\r') continue; // 过滤掉 CR
-            buffer.write(b);
+    /**
+     * BIO：在时间轮上设置截止时间，到期时关闭套接字，使阻塞中的读写立即失败（NIO 引擎由事件循环管理超时）
+     *
+     * @return 定时任务句柄，完成后用 {@link #disarm} 取消
+     */
+    private TimerWheel.Timeout armDeadline(String phase, long timeoutMillis) {
+        if (clientSocket == null) {
+            return null;
+        }
+        return ConnectionTimeouts.WHEEL.schedule(timeoutMillis, () -> {
+            timedOutPhase = phase;
+            try {
+                // 先关闭发送方向：阻塞在 transferTo（sendfile）中的线程不会因 close 被唤醒
+                clientSocket.shutdownOutput();
+            } catch (IOException ignored) {
+            }
+            try {
+                clientSocket.close();
+            } catch (IOException ignored) {
+            }
+        });
+    }
+
+    private static TimerWheel.Timeout disarm(TimerWheel.Timeout deadline) {
+        if (deadline != null) {
+            deadline.cancel();
+        }
+        return null;
+    }
+
+    /**
+     * BIO 套接字输出：每次阻塞写都按最低传输速率设置截止时间，客户端不读取时不会一直占用线程
+     */
+    private final class TimedOutputStream extends FilterOutputStream {
+        TimedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeDeadline = armDeadline(ConnectionTimeouts.RESPONSE_WRITE,
+                    ConnectionTimeouts.transferTimeoutMillis(len));
+            long start = System.nanoTime();
+            try {
+                out.write(b, off, len);
+                ServerMetrics.BYTES_OUT.add(len);
+            } finally {
+                writeDeadline = disarm(writeDeadline);
+                ServerMetrics.WRITE.record(System.nanoTime() - start);
+            }
         }
-        if (b == -1 && buffer.size() == 0) return null;
-        return buffer.toString(StandardCharsets.ISO_8859_1);
     }
 
-    private static byte[] readFixedBytes(InputStream in, long length) throws IOException {
-        if (length <= 0) return new byte[0];
-        if (length > Integer.MAX_VALUE) {
-            throw new IOException("Content-Length too large: " + length);
+    // 把缓冲的响应真正写到套接字（NIO 引擎的响应由事件循环写出，无需处理）
+    private void flushBuffered() throws IOException {
+        if (responseBuffer != null) {
+            responseBuffer.flushNow();
         }
-        int remaining = (int) length;
-        byte[] data = new byte[remaining];
-        int offset = 0;
-        while (offset < remaining) {
-            int read = in.read(data, offset, remaining - offset);
-            if (read == -1) throw new EOFException("Unexpected EOF while reading request body");
-            offset += read;
+    }
+
+    /**
+     * BIO 响应缓冲：各发送方法中的 flush 不立即写出，由处理循环在阻塞读取前、
+     * 或直接写套接字（零拷贝）前调用 {@link #flushNow()}
+     * <p>
+     * 只由处理该连接的线程访问，写路径不加锁（不用 BufferedOutputStream 的 synchronized 方法，虚拟线程不会被钉住）
+     */
+    private final class ResponseBuffer extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buf = new byte[RESPONSE_BUFFER_SIZE];
+        private int count;
+        private final ByteBuffer[] gather = new ByteBuffer[3];
+
+        ResponseBuffer(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buf.length) {
+                drain();
+            }
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len >= buf.length) {
+                // 大块数据不经过缓冲区，直接写出
+                drain();
+                out.write(b, off, len);
+                return;
+            }
+            if (len > buf.length - count) {
+                drain();
+            }
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        /**
+         * 写入响应头与响应体：缓冲区放得下时直接复制进去；否则把已缓冲数据、响应头、
+         * 响应体用一次聚集写（writev）写到套接字
+         */
+        void write(ByteBuffer head, ByteBuffer body, SocketChannel channel) throws IOException {
+            int total = (head == null ? 0 : head.remaining()) + (body == null ? 0 : body.remaining());
+            if (channel == null || count + total <= buf.length) {
+                put(head);
+                put(body);
+                return;
+            }
+            gather[0] = ByteBuffer.wrap(buf, 0, count);
+            gather[1] = head == null ? gather[0] : head;
+            gather[2] = body == null ? gather[0] : body;
+            long remaining = count + total;
+            writeDeadline = armDeadline(ConnectionTimeouts.RESPONSE_WRITE,
+                    ConnectionTimeouts.transferTimeoutMillis(remaining));
+            long start = System.nanoTime();
+            try {
+                while (remaining > 0) {
+                    long n = channel.write(gather);
+                    remaining -= n;
+                    ServerMetrics.BYTES_OUT.add(n);
+                }
+            } finally {
+                writeDeadline = disarm(writeDeadline);
+                ServerMetrics.WRITE.record(System.nanoTime() - start);
+            }
+            count = 0;
+            gather[0] = gather[1] = gather[2] = null;
+        }
+
+        private void put(ByteBuffer data) throws IOException {
+            if (data == null) return;
+            if (data.hasArray()) {
+                write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                data.position(data.limit());
+                return;
+            }
+            while (data.hasRemaining()) {
+                if (count == buf.length) {
+                    flushNow();
+                }
+                int n = Math.min(data.remaining(), buf.length - count);
+                data.get(buf, count, n);
+                count += n;
+            }
+        }
+
+        // 普通响应留在缓冲区里，等没有已到达的请求时再合并写出；流式响应的 flush 要立即推送给客户端
+        @Override
+        public void flush() throws IOException {
+            if (streamingBody != null) {
+                flushNow();
+            }
+        }
+
+        void flushNow() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flushNow();
+            } finally {
+                out.close();
+            }
+        }
+
+        // 把缓冲区中的数据写到下层输出流
+        private void drain() throws IOException {
+            if (count > 0) {
+                out.write(buf, 0, count);
+                count = 0;
+            }
         }
-        return data;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,104 @@
+package server;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 有界无锁环形缓冲区：多个生产者、一个消费者线程（日志、访问日志等后台写出线程使用）
+ * <p>
+ * 生产者用 CAS 领取序号后写入对应槽位，缓冲区已满时 {@link #offer} 立即返回 false，由调用方决定丢弃；
+ * 消费者按序号顺序成批取出，缓冲区为空时在 {@link #await} 中休眠，生产者写入后将其唤醒。
+ */
+final class RingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    // 生产者领取的下一个序号
+    private final AtomicLong tail = new AtomicLong();
+    // 消费者下一个要取出的序号（只由消费者线程写）
+    private volatile long head;
+    // 正在 await 中休眠的消费者线程
+    private volatile Thread waiter;
+
+    /**
+     * @param capacity 容量（向上取整为 2 的幂）
+     */
+    RingBuffer(int capacity) {
+        int n = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(n);
+        this.mask = n - 1;
+    }
+
+    /**
+     * 放入一个元素；缓冲区已满时返回 false
+     */
+    boolean offer(E e) {
+        long seq;
+        do {
+            seq = tail.get();
+            if (seq - head > mask) {
+                return false;
+            }
+        } while (!tail.compareAndSet(seq, seq + 1));
+        // volatile 写：与下面读取 waiter 之间不能重排，消费者休眠前会重新检查槽位
+        slots.set((int) (seq & mask), e);
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+        return true;
+    }
+
+    /**
+     * 按顺序取出最多 max 个元素追加到 out（仅消费者线程调用）
+     *
+     * @return 取出的个数
+     */
+    int drainTo(List<? super E> out, int max) {
+        long h = head;
+        int n = 0;
+        while (n < max) {
+            int index = (int) (h & mask);
+            E e = slots.get(index);
+            if (e == null) {
+                break; // 空，或生产者已领取序号但尚未写入
+            }
+            slots.lazySet(index, null);
+            out.add(e);
+            h++;
+            n++;
+        }
+        head = h;
+        return n;
+    }
+
+    /**
+     * 缓冲区为空时休眠，直到有新元素或超时（仅消费者线程调用）
+     */
+    void await(long timeoutNanos) {
+        waiter = Thread.currentThread();
+        if (slots.get((int) (head & mask)) == null) {
+            LockSupport.parkNanos(this, timeoutNanos);
+        }
+        waiter = null;
+    }
+
+    // 唤醒休眠中的消费者（如要求其立即写出）
+    void wakeUp() {
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    // 消费者下一个要取出的序号，即已取出的元素个数
+    long drainedSequence() {
+        return head;
+    }
+
+    // 下一个放入的元素将得到的序号
+    long nextSequence() {
+        return tail.get();
+    }
+}
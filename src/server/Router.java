@@ -0,0 +1,165 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 路由表：按路径分段组织的前缀树，每个节点按请求方法保存处理器
+ * <p>
+ * 路径按 '/' 分段逐级查找子节点（HashMap），查找代价只与路径段数有关，与注册的路由数量无关；
+ * 未注册的路径（如静态资源）在第一个不匹配的分段即返回 null。
+ * 分段写作 {name} 时匹配任意非空分段，匹配值（未解码的原始分段）作为路径参数交给处理器，
+ * 精确分段优先于参数分段。
+ * 查询字符串（? 之后）不参与匹配。
+ * <p>
+ * 路由应在启动时注册完毕，之后只读，可被多个线程同时查找。
+ *
+ * @param <T> 处理器类型
+ */
+final class Router<T> {
+    private static final String[] NO_VALUES = new String[0];
+
+    private final Node<T> root = new Node<>();
+
+    /**
+     * 匹配结果：处理器、路径参数与注册时的路径模式（用于按路由统计）
+     */
+    static final class Match<T> {
+        final T handler;
+        final Map<String, String> params;
+        final String pattern;
+
+        Match(T handler, Map<String, String> params, String pattern) {
+            this.handler = handler;
+            this.params = params;
+            this.pattern = pattern;
+        }
+
+        String param(String name) {
+            return params.get(name);
+        }
+    }
+
+    private static final class Node<T> {
+        final Map<String, Node<T>> children = new HashMap<>();
+        // 参数分段子节点（同一位置只允许一个参数名）
+        Node<T> paramChild;
+        String paramName;
+        final Map<HttpRequestParser.Method, Route<T>> routes = new EnumMap<>(HttpRequestParser.Method.class);
+    }
+
+    private static final class Route<T> {
+        final T handler;
+        final String pattern;
+        // 从根到该节点路径上的参数名（按出现顺序），无参数时为空数组
+        final String[] paramNames;
+        // 无路径参数的路由预先构造好匹配结果，查找时不再分配
+        final Match<T> staticMatch;
+
+        Route(T handler, String pattern, String[] paramNames) {
+            this.handler = handler;
+            this.pattern = pattern;
+            this.paramNames = paramNames;
+            this.staticMatch = paramNames.length == 0 ? new Match<>(handler, Collections.emptyMap(), pattern) : null;
+        }
+    }
+
+    /**
+     * 注册路由
+     *
+     * @param method  请求方法
+     * @param pattern 以 / 开头的路径模式，如 /user 或 /users/{username}
+     * @param handler 处理器
+     * @throws IllegalArgumentException 模式格式错误、参数名冲突或路由重复注册
+     */
+    Router<T> add(HttpRequestParser.Method method, String pattern, T handler) {
+        if (!pattern.startsWith("/")) {
+            throw new IllegalArgumentException("Route must start with '/': " + pattern);
+        }
+        Node<T> node = root;
+        List<String> paramNames = new ArrayList<>();
+        for (String segment : pattern.substring(1).split("/", -1)) {
+            if (segment.startsWith("{") && segment.endsWith("}") && segment.length() > 2) {
+                String name = segment.substring(1, segment.length() - 1);
+                if (node.paramChild == null) {
+                    node.paramChild = new Node<>();
+                    node.paramName = name;
+                } else if (!node.paramName.equals(name)) {
+                    throw new IllegalArgumentException("Conflicting path parameter {" + name + "} in " + pattern);
+                }
+                paramNames.add(name);
+                node = node.paramChild;
+            } else {
+                node = node.children.computeIfAbsent(segment, s -> new Node<>());
+            }
+        }
+        if (node.routes.containsKey(method)) {
+            throw new IllegalArgumentException("Duplicate route: " + method + " " + pattern);
+        }
+        node.routes.put(method, new Route<>(handler, pattern, paramNames.toArray(new String[0])));
+        return this;
+    }
+
+    /**
+     * 查找路由
+     *
+     * @param method 请求方法
+     * @param path   请求路径（可带查询字符串）
+     * @return 匹配结果；路径或方法未注册时返回 null
+     */
+    Match<T> find(HttpRequestParser.Method method, String path) {
+        if (method == null || path.isEmpty() || path.charAt(0) != '/') {
+            return null;
+        }
+        int end = path.indexOf('?');
+        if (end < 0) end = path.length();
+        Route<T> route = find(root, method, path, 1, end, 0, NO_VALUES);
+        if (route == null) {
+            return null;
+        }
+        if (route.staticMatch != null) {
+            return route.staticMatch;
+        }
+        // 有路径参数时重新匹配一次收集参数值（只有参数路由命中时才分配）
+        String[] values = new String[route.paramNames.length];
+        find(root, method, path, 1, end, 0, values);
+        Map<String, String> params = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            params.put(route.paramNames[i], values[i]);
+        }
+        return new Match<>(route.handler, params, route.pattern);
+    }
+
+    // 从 start 开始匹配剩余路径；values 长度不足时只做匹配不记录参数值
+    private Route<T> find(Node<T> node, HttpRequestParser.Method method, String path,
+                          int start, int end, int paramIndex, String[] values) {
+        int slash = path.indexOf('/', start);
+        if (slash < 0 || slash > end) slash = end;
+        boolean last = slash == end;
+
+        // 精确分段优先（仅在该位置有子节点时才截取分段）
+        if (!node.children.isEmpty()) {
+            Node<T> child = node.children.get(path.substring(start, slash));
+            if (child != null) {
+                Route<T> route = last ? child.routes.get(method)
+                        : find(child, method, path, slash + 1, end, paramIndex, values);
+                if (route != null) return route;
+            }
+        }
+        if (node.paramChild != null && slash > start) {
+            Route<T> route = last ? node.paramChild.routes.get(method)
+                    : find(node.paramChild, method, path, slash + 1, end, paramIndex + 1, values);
+            if (route != null) {
+                if (paramIndex < values.length) {
+                    values[paramIndex] = path.substring(start, slash);
+                }
+                return route;
+            }
+        }
+        return null;
+    }
+}
@@ -6,20 +6,31 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.PrintStream;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ServerGUI extends JFrame {
     private static final int DEFAULT_PORT = 8007;
     private static final int DEFAULT_MAX_THREADS = 50;
+    // 日志面板最多保留的行数，超出时删除最早的行
+    private static final int MAX_LOG_LINES = 2000;
+    // 日志面板刷新间隔：日志线程送来的记录先暂存，定时在事件分发线程中成批插入
+    private static final int LOG_REFRESH_MS = 200;
+    private static final DateTimeFormatter LOG_TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
     
     private JTextField portField;
     private JTextField maxThreadsField;
+    private JComboBox<HttpServer.IoMode> modeComboBox;
     private JButton startButton;
     private JButton stopButton;
     private JTextPane logPane;
     private JLabel statusLabel;
-    private JLabel connectionCountLabel;
+    private DashboardPanel dashboard;
     
     private HttpServer server;
     private Thread serverThread;
@@ -30,12 +41,20 @@ public class ServerGUI extends JFrame {
     private Style infoStyle;
     private Style errorStyle;
     private Style successStyle;
+    // 等待插入日志面板的记录（日志线程写入，事件分发线程取出）
+    private final ArrayDeque<Log.Record> pendingLog = new ArrayDeque<>();
+    private final Log.Sink logSink = this::enqueueLog;
     
     public ServerGUI() {
         initStyles();
+        // 日志改由 GUI 显示，不再打印到控制台
+        Log.addSink(logSink);
+        Log.setConsoleEnabled(false);
         initUI();
         setupMenuBar();
         redirectSystemStreams();
+        new Timer(LOG_REFRESH_MS, e -> flushLog()).start();
+        dashboard.start();
     }
     
     private void initStyles() {
@@ -45,7 +64,7 @@ public class ServerGUI extends JFrame {
     private void initUI() {
         setTitle("HTTP Server - 服务器控制台");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setSize(900, 650);
+        setSize(1000, 800);
         setLocationRelativeTo(null);
         setLayout(new BorderLayout(10, 10));
         
@@ -53,8 +72,11 @@ public class ServerGUI extends JFrame {
         JPanel topPanel = createConfigPanel();
         add(topPanel, BorderLayout.NORTH);
         
-        // 中间面板 - 日志输出
-        JPanel centerPanel = createLogPanel();
+        // 中间面板 - 运行监控与日志输出
+        JPanel centerPanel = new JPanel(new BorderLayout(10, 10));
+        dashboard = new DashboardPanel();
+        centerPanel.add(dashboard, BorderLayout.NORTH);
+        centerPanel.add(createLogPanel(), BorderLayout.CENTER);
         add(centerPanel, BorderLayout.CENTER);
         
         // 底部面板 - 状态信息
@@ -65,8 +87,8 @@ public class ServerGUI extends JFrame {
         initLogStyles();
         
         // 添加初始日志
-        logMessage("服务器GUI已启动，请配置参数后点击'启动服务器'按钮", infoStyle);
-        logMessage("默认端口: " + DEFAULT_PORT + ", 默认线程池大小: " + DEFAULT_MAX_THREADS, infoStyle);
+        Log.info("服务器GUI已启动，请配置参数后点击'启动服务器'按钮");
+        Log.info("默认端口: " + DEFAULT_PORT + ", 默认线程池大小: " + DEFAULT_MAX_THREADS);
     }
     
     private void initLogStyles() {
@@ -112,9 +134,18 @@ public class ServerGUI extends JFrame {
         gbc.weightx = 1.0;
         maxThreadsField = new JTextField(String.valueOf(DEFAULT_MAX_THREADS), 10);
         panel.add(maxThreadsField, gbc);
+
+        // I/O 模型
+        gbc.gridx = 4;
+        gbc.weightx = 0;
+        panel.add(new JLabel("I/O模型:"), gbc);
+
+        gbc.gridx = 5;
+        modeComboBox = new JComboBox<>(HttpServer.IoMode.values());
+        panel.add(modeComboBox, gbc);
         
         // 按钮
-        gbc.gridx = 4;
+        gbc.gridx = 6;
         gbc.weightx = 0;
         gbc.fill = GridBagConstraints.NONE;
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
@@ -157,9 +188,9 @@ public class ServerGUI extends JFrame {
         clearLogButton.addActionListener(e -> {
             try {
                 logDocument.remove(0, logDocument.getLength());
-                logMessage("日志已清除", infoStyle);
+                Log.info("日志已清除");
             } catch (BadLocationException ex) {
-                ex.printStackTrace();
+                Log.error("清除日志失败: " + ex.getMessage());
             }
         });
         
@@ -179,10 +210,6 @@ public class ServerGUI extends JFrame {
         statusLabel.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 12));
         panel.add(statusLabel);
         
-        connectionCountLabel = new JLabel("连接数: 0");
-        connectionCountLabel.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
-        panel.add(connectionCountLabel);
-        
         return panel;
     }
     
@@ -229,7 +256,7 @@ public class ServerGUI extends JFrame {
     
     private void startServer() {
         if (isRunning) {
-            logMessage("服务器已在运行中", errorStyle);
+            Log.error("服务器已在运行中");
             return;
         }
         
@@ -247,15 +274,18 @@ public class ServerGUI extends JFrame {
                 throw new NumberFormatException("线程池大小: 1-1000");
             }
         } catch (NumberFormatException ex) {
-            logMessage("参数错误: " + ex.getMessage(), errorStyle);
+            Log.error("参数错误: " + ex.getMessage());
             JOptionPane.showMessageDialog(this, "请输入有效的参数!\n端口: 1-65535\n线程池: 1-1000", 
                     "参数错误", JOptionPane.ERROR_MESSAGE);
             return;
         }
         
+        HttpServer.IoMode mode = (HttpServer.IoMode) modeComboBox.getSelectedItem();
+
         // 禁用配置控件
         portField.setEnabled(false);
         maxThreadsField.setEnabled(false);
+        modeComboBox.setEnabled(false);
         startButton.setEnabled(false);
         stopButton.setEnabled(true);
         
@@ -263,13 +293,10 @@ public class ServerGUI extends JFrame {
         server = new HttpServer();
         serverThread = new Thread(() -> {
             try {
-                HttpServer.setGUI(this);
-                HttpServer.startServer(port, maxThreads);
+                HttpServer.startServer(port, maxThreads, mode);
             } catch (Exception ex) {
-                SwingUtilities.invokeLater(() -> {
-                    logMessage("服务器启动失败: " + ex.getMessage(), errorStyle);
-                    resetUIState();
-                });
+                Log.error("服务器启动失败: " + ex.getMessage());
+                SwingUtilities.invokeLater(this::resetUIState);
             }
         });
         serverThread.setDaemon(true);
@@ -277,12 +304,12 @@ public class ServerGUI extends JFrame {
         
         isRunning = true;
         updateStatus("运行中", new Color(0, 128, 0));
-        logMessage("服务器启动中，端口: " + port + ", 线程池: " + maxThreads, successStyle);
+        Log.success("服务器启动中，端口: " + port + ", 线程池: " + maxThreads + ", I/O模型: " + mode);
     }
     
     private void stopServer() {
         if (!isRunning) {
-            logMessage("服务器未运行", errorStyle);
+            Log.error("服务器未运行");
             return;
         }
         
@@ -290,16 +317,17 @@ public class ServerGUI extends JFrame {
             HttpServer.stopServer();
             isRunning = false;
             updateStatus("已停止", Color.RED);
-            logMessage("服务器已停止", successStyle);
+            Log.success("服务器已停止");
             resetUIState();
         } catch (Exception ex) {
-            logMessage("停止服务器时出错: " + ex.getMessage(), errorStyle);
+            Log.error("停止服务器时出错: " + ex.getMessage());
         }
     }
     
     private void resetUIState() {
         portField.setEnabled(true);
         maxThreadsField.setEnabled(true);
+        modeComboBox.setEnabled(true);
         startButton.setEnabled(true);
         stopButton.setEnabled(false);
     }
@@ -309,35 +337,83 @@ public class ServerGUI extends JFrame {
         statusLabel.setForeground(color);
     }
     
-    public void updateConnectionCount(int count) {
-        SwingUtilities.invokeLater(() -> {
-            connectionCountLabel.setText("连接数: " + count);
-        });
-    }
-    
-    public void logMessage(String message, Style style) {
-        SwingUtilities.invokeLater(() -> {
-            try {
-                String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-                String logEntry = "[" + timestamp + "] " + message + "\n";
-                logDocument.insertString(logDocument.getLength(), logEntry, style);
-                logPane.setCaretPosition(logDocument.getLength());
-            } catch (BadLocationException e) {
-                e.printStackTrace();
-            }
-        });
-    }
-    
     public void logInfo(String message) {
-        logMessage(message, infoStyle);
+        Log.info(message);
     }
     
     public void logError(String message) {
-        logMessage(message, errorStyle);
+        Log.error(message);
     }
     
     public void logSuccess(String message) {
-        logMessage(message, successStyle);
+        Log.success(message);
+    }
+
+    // 日志线程回调：只暂存记录，超过面板容量的旧记录直接丢弃
+    private void enqueueLog(List<Log.Record> batch) {
+        synchronized (pendingLog) {
+            pendingLog.addAll(batch);
+            while (pendingLog.size() > MAX_LOG_LINES) {
+                pendingLog.pollFirst();
+            }
+        }
+    }
+
+    // 定时器回调（事件分发线程）：把暂存的记录成批插入日志面板，并删除超出容量的旧行
+    private void flushLog() {
+        List<Log.Record> records;
+        synchronized (pendingLog) {
+            if (pendingLog.isEmpty()) {
+                return;
+            }
+            records = new ArrayList<>(pendingLog);
+            pendingLog.clear();
+        }
+        try {
+            // 相同样式的连续记录合并为一次插入
+            StringBuilder run = new StringBuilder();
+            Style runStyle = null;
+            long cachedSecond = Long.MIN_VALUE;
+            String timestamp = "";
+            for (Log.Record record : records) {
+                Style style = styleOf(record.level);
+                if (style != runStyle && run.length() > 0) {
+                    logDocument.insertString(logDocument.getLength(), run.toString(), runStyle);
+                    run.setLength(0);
+                }
+                runStyle = style;
+                long second = record.timeMillis / 1000;
+                if (second != cachedSecond) {
+                    cachedSecond = second;
+                    timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(record.timeMillis),
+                            ZoneId.systemDefault()).format(LOG_TIME_FORMAT);
+                }
+                run.append('[').append(timestamp).append("] ").append(record.message).append('\n');
+            }
+            logDocument.insertString(logDocument.getLength(), run.toString(), runStyle);
+
+            Element root = logDocument.getDefaultRootElement();
+            // 最后一个元素是末尾的空行
+            int excess = root.getElementCount() - 1 - MAX_LOG_LINES;
+            if (excess > 0) {
+                logDocument.remove(0, root.getElement(excess).getStartOffset());
+            }
+            logPane.setCaretPosition(logDocument.getLength());
+        } catch (BadLocationException e) {
+            Log.error("日志面板更新失败: " + e.getMessage());
+        }
+    }
+
+    private Style styleOf(Log.Level level) {
+        switch (level) {
+            case WARN:
+            case ERROR:
+                return errorStyle;
+            case SUCCESS:
+                return successStyle;
+            default:
+                return infoStyle;
+        }
     }
     
     private void redirectSystemStreams() {
@@ -345,24 +421,24 @@ public class ServerGUI extends JFrame {
         PrintStream out = new PrintStream(System.out) {
             @Override
             public void println(String x) {
-                logInfo(x);
+                Log.info(x);
             }
             
             @Override
             public void print(String x) {
-                logInfo(x);
+                Log.info(x);
             }
         };
         
         PrintStream err = new PrintStream(System.err) {
             @Override
             public void println(String x) {
-                logError(x);
+                Log.error(x);
             }
             
             @Override
             public void print(String x) {
-                logError(x);
+                Log.error(x);
             }
         };
         
@@ -374,7 +450,7 @@ public class ServerGUI extends JFrame {
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.warn("无法使用系统外观: " + e.getMessage());
         }
         
         SwingUtilities.invokeLater(() -> {
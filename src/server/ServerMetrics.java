@@ -0,0 +1,170 @@
+package server;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务器运行指标（全局，线程安全）：按路由与状态码的请求计数、解析/处理/写出延迟直方图（以 Prometheus histogram 输出）、收发字节数，
+ * 以及连接数、线程池队列长度等即时值；由 {@code GET /metrics} 以 Prometheus 文本格式输出
+ * <p>
+ * 计数都用 {@link LongAdder}，直方图见 {@link LatencyHistogram}，记录时不加锁、不分配对象
+ * （路由计数表只在某个路由第一次出现时插入）。
+ */
+final class ServerMetrics {
+    // 请求头解析：收到请求的第一个字节到请求头解析完成
+    static final LatencyHistogram PARSE = new LatencyHistogram();
+    // 处理：路由处理器执行（BIO 下含写入响应缓冲区）
+    static final LatencyHistogram HANDLER = new LatencyHistogram();
+    // 写出：BIO 下每次阻塞写套接字的耗时；NIO 下响应进入发送队列到全部写入套接字的耗时
+    static final LatencyHistogram WRITE = new LatencyHistogram();
+
+    static final LongAdder BYTES_IN = new LongAdder();
+    static final LongAdder BYTES_OUT = new LongAdder();
+
+    // 未匹配接口路由的请求按静态资源统计
+    static final String STATIC_ROUTE = "static";
+
+    private static final LongAdder[] STATUS_COUNTS = new LongAdder[600];
+    private static final Map<HttpRequestParser.Method, Map<String, LongAdder>> ROUTE_COUNTS =
+            new EnumMap<>(HttpRequestParser.Method.class);
+    // 输出的直方图桶上界（秒）：内部的细分桶按这些边界累加，服务端不计算分位数，
+    // 由 Prometheus 用 histogram_quantile() 按任意时间窗口聚合
+    private static final String[] BUCKET_BOUNDS = {
+            "0.0001", "0.00025", "0.0005", "0.001", "0.0025", "0.005", "0.01",
+            "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"};
+    private static final long[] BUCKET_BOUND_NANOS = new long[BUCKET_BOUNDS.length];
+
+    static {
+        for (int i = 0; i < STATUS_COUNTS.length; i++) {
+            STATUS_COUNTS[i] = new LongAdder();
+        }
+        for (HttpRequestParser.Method method : HttpRequestParser.Method.values()) {
+            ROUTE_COUNTS.put(method, new ConcurrentHashMap<>());
+        }
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            BUCKET_BOUND_NANOS[i] = Math.round(Double.parseDouble(BUCKET_BOUNDS[i]) * 1e9);
+        }
+    }
+
+    private ServerMetrics() {
+    }
+
+    /**
+     * 记录一个处理完的请求
+     *
+     * @param route        匹配的路由模式，静态资源为 {@link #STATIC_ROUTE}
+     * @param status       响应状态码
+     * @param handlerNanos 处理耗时
+     */
+    static void recordRequest(HttpRequestParser.Method method, String route, int status, long handlerNanos) {
+        ROUTE_COUNTS.get(method).computeIfAbsent(route, r -> new LongAdder()).increment();
+        if (status >= 0 && status < STATUS_COUNTS.length) {
+            STATUS_COUNTS[status].increment();
+        }
+        HANDLER.record(handlerNanos);
+    }
+
+    // 已处理的请求总数
+    static long requestCount() {
+        return HANDLER.count();
+    }
+
+    /**
+     * 以 Prometheus 文本格式（0.0.4）输出全部指标
+     */
+    static String render() {
+        StringBuilder sb = new StringBuilder(4096);
+
+        header(sb, "http_requests_total", "counter", "Requests handled, by method and route.");
+        for (Map.Entry<HttpRequestParser.Method, Map<String, LongAdder>> byMethod : ROUTE_COUNTS.entrySet()) {
+            for (Map.Entry<String, LongAdder> byRoute : byMethod.getValue().entrySet()) {
+                sb.append("http_requests_total{method=\"").append(byMethod.getKey())
+                        .append("\",route=\"").append(escape(byRoute.getKey())).append("\"} ")
+                        .append(byRoute.getValue().sum()).append('\n');
+            }
+        }
+        header(sb, "http_responses_total", "counter", "Responses sent, by status code.");
+        for (int status = 0; status < STATUS_COUNTS.length; status++) {
+            long n = STATUS_COUNTS[status].sum();
+            if (n > 0) {
+                sb.append("http_responses_total{code=\"").append(status).append("\"} ").append(n).append('\n');
+            }
+        }
+
+        histogram(sb, "http_request_parse_seconds", "Time from first request byte to parsed headers.", PARSE);
+        histogram(sb, "http_request_handler_seconds", "Time spent in route handlers.", HANDLER);
+        histogram(sb, "http_response_write_seconds", "Time spent writing responses to sockets.", WRITE);
+
+        counter(sb, "http_received_bytes_total", "Bytes read from client sockets.", BYTES_IN.sum());
+        counter(sb, "http_sent_bytes_total", "Bytes written to client sockets.", BYTES_OUT.sum());
+
+        gauge(sb, "http_connections_active", "Open client connections.", HttpServer.getActiveConnections());
+        counter(sb, "http_connections_total", "Connections accepted since start.", HttpServer.getConnectionCount());
+        AdmissionControl admission = HttpServer.getAdmissionControl();
+        header(sb, "http_connections_rejected_total", "counter", "Connections rejected by admission control.");
+        sb.append("http_connections_rejected_total{reason=\"rate_limited\"} ")
+                .append(admission.rateLimitedCount()).append('\n');
+        sb.append("http_connections_rejected_total{reason=\"overloaded\"} ")
+                .append(admission.overloadedCount()).append('\n');
+        gauge(sb, "http_executor_queue_depth", "Tasks waiting in the request executor queue.",
+                HttpServer.getQueueDepth());
+
+        StaticResourceCache cache = HttpServer.getStaticCache();
+        counter(sb, "static_cache_hits_total", "Static resource cache hits.", cache.getHitCount());
+        counter(sb, "static_cache_misses_total", "Static resource cache misses.", cache.getMissCount());
+
+        counter(sb, "log_records_dropped_total", "Log records dropped because the log buffer was full.",
+                Log.droppedCount());
+        AccessLog accessLog = HttpServer.getAccessLog();
+        if (accessLog != null) {
+            counter(sb, "access_log_records_dropped_total", "Access log records dropped.", accessLog.droppedCount());
+        }
+        return sb.toString();
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, "counter", help);
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, "gauge", help);
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * 按 Prometheus histogram 输出：{@link #BUCKET_BOUNDS} 各上界的累计次数、总和（秒）与次数。
+     * 内部桶整体不超过某个上界时才计入该上界，跨越上界的桶（相对宽度约 1.6%）计入下一个
+     */
+    private static void histogram(StringBuilder sb, String name, String help, LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        header(sb, name, "histogram", help);
+        long cumulative = 0;
+        int bucket = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            while (bucket < snapshot.counts.length && LatencyHistogram.upperBound(bucket) <= BUCKET_BOUND_NANOS[i]) {
+                cumulative += snapshot.counts[bucket++];
+            }
+            sb.append(name).append("_bucket{le=\"").append(BUCKET_BOUNDS[i]).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        sb.append(name).append("_bucket{le=\"+Inf\"} ").append(snapshot.count).append('\n');
+        sb.append(name).append("_sum ").append(seconds(snapshot.sum)).append('\n');
+        sb.append(name).append("_count ").append(snapshot.count).append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,209 @@
+package server;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话存储：令牌 → 会话，带绝对过期时间、空闲过期时间与数量上限（线程安全）
+ * <p>
+ * 查找只是一次 {@link ConcurrentHashMap#get}，并在读取时检查是否过期；过期会话由后台线程通过时间轮清理。
+ * 时间轮按到期时刻把会话放入对应的槽，清理线程每个刻度只处理当前槽：已到期的删除，
+ * 期间被访问过（空闲期限延后）或超出一圈的重新放入新的槽，因此访问会话时不需要移动它。
+ * 会话数达到上限时，从当前刻度往后找最先到期的槽，淘汰其中一个会话。
+ */
+final class SessionStore {
+    // 令牌随机字节数（hex 编码后 64 个字符）
+    private static final int TOKEN_BYTES = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * 会话：登录用户及签发时的密码哈希（用于在改密或删除用户后使会话失效）
+     */
+    static final class Session {
+        final String token;
+        final String username;
+        final String credential;
+        final long expiresAt;
+        volatile long lastAccess;
+
+        Session(String token, String username, String credential, long now, long ttlMillis) {
+            this.token = token;
+            this.username = username;
+            this.credential = credential;
+            this.expiresAt = now + ttlMillis;
+            this.lastAccess = now;
+        }
+    }
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final long idleMillis;
+    private final int maxSessions;
+
+    // 时间轮：槽数为 2 的幂，每个刻度 tickMillis 毫秒
+    private final long tickMillis;
+    private final ConcurrentLinkedQueue<Session>[] wheel;
+    private final int mask;
+    private final Thread sweeper;
+    // 清理线程已处理到的刻度
+    private volatile long sweptTick;
+
+    /**
+     * @param ttlMillis   会话最长有效期（自签发起）
+     * @param idleMillis  空闲过期时间（自最后一次访问起）
+     * @param maxSessions 会话数上限
+     * @param tickMillis  时间轮刻度
+     * @param wheelSlots  时间轮槽数（向上取整为 2 的幂）
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    SessionStore(long ttlMillis, long idleMillis, int maxSessions, long tickMillis, int wheelSlots) {
+        this.ttlMillis = ttlMillis;
+        this.idleMillis = idleMillis;
+        this.maxSessions = maxSessions;
+        this.tickMillis = tickMillis;
+        int slots = Integer.highestOneBit(Math.max(2, wheelSlots - 1)) << 1;
+        this.wheel = new ConcurrentLinkedQueue[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.mask = slots - 1;
+        this.sweptTick = now() / tickMillis;
+        this.sweeper = new Thread(this::sweepLoop, "session-sweeper");
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    /**
+     * 签发新会话
+     *
+     * @return 会话令牌
+     */
+    String create(String username, String credential) {
+        while (sessions.size() >= maxSessions && evictOne()) {
+            // 达到上限：淘汰最先到期的会话
+        }
+        Session session;
+        do {
+            session = new Session(newToken(), username, credential, now(), ttlMillis);
+        } while (sessions.putIfAbsent(session.token, session) != null);
+        schedule(session, deadline(session));
+        return session.token;
+    }
+
+    /**
+     * 查找会话并刷新最后访问时间
+     *
+     * @return 有效会话；不存在或已过期返回 null
+     */
+    Session get(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = now();
+        if (deadline(session) <= now) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.lastAccess = now;
+        return session;
+    }
+
+    // 注销会话（时间轮中的条目由清理线程丢弃）
+    void remove(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    long ttlMillis() {
+        return ttlMillis;
+    }
+
+    // 停止清理线程（会话只保存在内存中，停止后全部失效）
+    void close() {
+        sweeper.interrupt();
+    }
+
+    // 会话的到期时刻：绝对期限与空闲期限中较早者
+    private long deadline(Session session) {
+        return Math.min(session.expiresAt, session.lastAccess + idleMillis);
+    }
+
+    private void schedule(Session session, long deadline) {
+        // 早于已处理刻度的放入下一个刻度，避免等待一整圈
+        long tick = Math.max(deadline / tickMillis, sweptTick + 1);
+        wheel[(int) (tick & mask)].add(session);
+    }
+
+    private void sweepLoop() {
+        List<Session> due = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(tickMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long nowTick = now() / tickMillis;
+            // 落后超过一圈时每个槽只需处理一次
+            long from = Math.max(sweptTick + 1, nowTick - mask);
+            for (long tick = from; tick <= nowTick; tick++) {
+                // 先取出整个槽再处理，重新放回同一槽的会话留到下一圈
+                ConcurrentLinkedQueue<Session> slot = wheel[(int) (tick & mask)];
+                for (Session s; (s = slot.poll()) != null; ) {
+                    due.add(s);
+                }
+                sweptTick = tick;
+                long now = now();
+                for (Session s : due) {
+                    if (sessions.get(s.token) != s) {
+                        continue; // 已注销或已淘汰
+                    }
+                    long deadline = deadline(s);
+                    if (deadline <= now) {
+                        sessions.remove(s.token, s);
+                    } else {
+                        schedule(s, deadline);
+                    }
+                }
+                due.clear();
+            }
+        }
+    }
+
+    // 从当前刻度起按顺序查找，淘汰第一个仍有效的会话；时间轮为空时返回 false
+    private boolean evictOne() {
+        long start = sweptTick + 1;
+        for (int i = 0; i <= mask; i++) {
+            ConcurrentLinkedQueue<Session> slot = wheel[(int) ((start + i) & mask)];
+            for (Session s; (s = slot.poll()) != null; ) {
+                if (sessions.remove(s.token, s)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        return HexCodec.encode(bytes);
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
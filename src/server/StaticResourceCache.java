@@ -0,0 +1,529 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 静态资源缓存：规范化的文件路径 → MIME 类型、预序列化的响应头与文件内容
+ * <p>
+ * 请求路径先按词法规范化（{@link #resolve}），同一文件的不同写法（{@code //a}、{@code /./a}、{@code /b/../a}）
+ * 落到同一个条目；经符号链接等别名访问时按真实路径加载，也不会重复读取与压缩。
+ * <p>
+ * 按字节预算做 LRU 淘汰，超过单项上限的大文件只缓存元数据（内容仍零拷贝发送）。
+ * 文本类资源按文件版本预先生成 gzip/deflate 压缩变体，请求时按 Accept-Encoding 协商。
+ * 通过 WatchService 监听静态目录，文件被修改、删除或新建时失效对应条目，
+ * 因此命中时无需任何文件系统调用。
+ */
+public class StaticResourceCache {
+    // 规范化后的静态资源根目录
+    private final File root;
+    private final Path rootPath;
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final boolean offHeap;
+    // 小于该大小的文本不压缩（收益不抵头部与 CPU 开销）
+    private static final int MIN_COMPRESS_BYTES = 256;
+
+    // accessOrder = true：按访问顺序排列，头部为最久未使用
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Object lock = new Object(); // 用于线程安全
+    private long usedBytes = 0;
+    // 每次失效递增；加载期间发生过失效的条目不放入缓存，避免缓存旧内容
+    private long generation = 0;
+    // 目录监听启动成功后才启用缓存，否则无法保证失效
+    private volatile boolean enabled = false;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param root          静态资源根目录
+     * @param maxBytes      缓存内容的总字节预算
+     * @param maxEntryBytes 单个文件超过该大小时不缓存内容
+     * @param offHeap       是否把文件内容放在堆外内存
+     */
+    public StaticResourceCache(File root, long maxBytes, int maxEntryBytes, boolean offHeap) {
+        File canonicalRoot;
+        try {
+            canonicalRoot = root.getCanonicalFile();
+        } catch (IOException e) {
+            canonicalRoot = root.getAbsoluteFile();
+        }
+        this.root = canonicalRoot;
+        this.rootPath = canonicalRoot.toPath();
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.offHeap = offHeap;
+        startWatcher();
+    }
+
+    /**
+     * 缓存条目（不可变）：同一文件版本的各个编码变体
+     */
+    public static final class Entry {
+        final File file;
+        final String mimeType;
+        final long lastModified;
+        // 预先格式化的 Last-Modified（HTTP 日期）
+        final String lastModifiedHttp;
+        // 原始内容
+        final Variant identity;
+        // 压缩变体，不可压缩或压缩无收益时为 null
+        final Variant gzip;
+        final Variant deflate;
+
+        Entry(File file, String mimeType, long lastModified, String lastModifiedHttp,
+              Variant identity, Variant gzip, Variant deflate) {
+            this.file = file;
+            this.mimeType = mimeType;
+            this.lastModified = lastModified;
+            this.lastModifiedHttp = lastModifiedHttp;
+            this.identity = identity;
+            this.gzip = gzip;
+            this.deflate = deflate;
+        }
+
+        // 按协商出的编码选择变体，不可用时退回原始内容
+        Variant select(String encoding) {
+            if ("gzip".equals(encoding) && gzip != null) return gzip;
+            if ("deflate".equals(encoding) && deflate != null) return deflate;
+            return identity;
+        }
+
+        long weight() {
+            return identity.weight() + (gzip == null ? 0 : gzip.weight()) + (deflate == null ? 0 : deflate.weight());
+        }
+    }
+
+    /**
+     * 某种内容编码下的响应体及其预序列化响应头
+     */
+    public static final class Variant {
+        // 内容编码，原始内容为 null
+        final String encoding;
+        // 强 ETag（含引号），各编码变体互不相同
+        final String etag;
+        // 200 响应的固定响应头（Content-Type、Content-Encoding、Content-Length、ETag、Last-Modified、Vary），不含结尾空行
+        final byte[] headerBytes;
+        // 304 响应的固定响应头（ETag、Last-Modified、Vary）
+        final byte[] notModifiedHeaderBytes;
+        // 内容（只读），未缓存内容时为 null，此时从 file 零拷贝发送
+        final ByteBuffer body;
+        final File file;
+        final long length;
+
+        Variant(String encoding, String etag, byte[] headerBytes, byte[] notModifiedHeaderBytes,
+                ByteBuffer body, File file, long length) {
+            this.encoding = encoding;
+            this.etag = etag;
+            this.headerBytes = headerBytes;
+            this.notModifiedHeaderBytes = notModifiedHeaderBytes;
+            this.body = body;
+            this.file = file;
+            this.length = length;
+        }
+
+        // 返回可独立读取的内容视图
+        ByteBuffer body() {
+            return body == null ? null : body.duplicate();
+        }
+
+        long weight() {
+            return headerBytes.length + notModifiedHeaderBytes.length + (body == null ? 0 : body.capacity());
+        }
+    }
+
+    /**
+     * 把请求路径解析为静态目录下的文件路径：只做词法规范化（合并多余的斜杠、{@code .} 与 {@code ..}），
+     * 不访问文件系统
+     *
+     * @return 规范化的路径；越出静态目录或不是合法路径时返回 null
+     */
+    public Path resolve(String requestPath) {
+        int start = 0;
+        while (start < requestPath.length() && requestPath.charAt(start) == '/') {
+            start++;
+        }
+        Path resolved;
+        try {
+            resolved = rootPath.resolve(requestPath.substring(start)).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        return contains(resolved) ? resolved : null;
+    }
+
+    // 路径是否位于静态目录之内（按路径分段比较）
+    public boolean contains(Path path) {
+        return path.startsWith(rootPath);
+    }
+
+    // 按 resolve 得到的路径查找缓存，未命中返回 null
+    public Entry get(Path path) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry;
+        synchronized (lock) {
+            entry = entries.get(path);
+        }
+        if (entry != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * 读取文件元数据与内容并放入缓存；可压缩的文本资源同时生成 gzip/deflate 变体，
+     * 存在同名 .gz 文件时直接使用它作为 gzip 变体
+     *
+     * @param file 已通过安全检查的规范化文件（{@link File#getCanonicalFile()}），其路径即缓存键
+     */
+    public Entry load(File file) throws IOException {
+        Path key = file.toPath();
+        long loadGeneration;
+        synchronized (lock) {
+            // 经别名访问的文件可能已按真实路径缓存
+            Entry cached = entries.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            loadGeneration = generation;
+        }
+        // 先取修改时间再读内容：读取期间文件被修改时，监听线程会使该条目失效
+        long lastModified = file.lastModified();
+        String lastModifiedHttp = HttpDateUtils.format(lastModified);
+        String mimeType = MimeUtils.getMimeType(file.getName());
+        boolean compressible = MimeUtils.isCompressible(mimeType);
+
+        ByteBuffer body = readIfSmall(file);
+        long length = body != null ? body.remaining() : file.length();
+        // 校验值按文件版本只计算一次，随条目缓存
+        String tag = entityTag(body, lastModified, length);
+        Validators validators = new Validators(tag, lastModifiedHttp);
+        Variant identity = newVariant(null, mimeType, validators, compressible, body, file, length);
+
+        Variant gzip = null;
+        Variant deflate = null;
+        if (compressible) {
+            // 预压缩文件：比原文件旧的视为过期，忽略
+            File sibling = new File(file.getPath() + ".gz");
+            if (sibling.isFile() && sibling.lastModified() >= lastModified) {
+                ByteBuffer gz = readIfSmall(sibling);
+                gzip = newVariant("gzip", mimeType, validators, true, gz, sibling,
+                        gz != null ? gz.remaining() : sibling.length());
+            }
+            if (body != null && length >= MIN_COMPRESS_BYTES) {
+                byte[] original = new byte[(int) length];
+                body.duplicate().get(original);
+                if (gzip == null) {
+                    gzip = compressedVariant("gzip", mimeType, validators, gzip(original), length);
+                }
+                deflate = compressedVariant("deflate", mimeType, validators, deflate(original), length);
+            }
+        }
+
+        Entry entry = new Entry(file, mimeType, lastModified, lastModifiedHttp, identity, gzip, deflate);
+
+        if (enabled && entry.weight() <= maxBytes) {
+            synchronized (lock) {
+                if (generation != loadGeneration) {
+                    return entry;
+                }
+                Entry old = entries.put(key, entry);
+                if (old != null) usedBytes -= old.weight();
+                usedBytes += entry.weight();
+                evictIfNeeded();
+            }
+        }
+        return entry;
+    }
+
+    // 文件不超过单项上限时读入缓冲区，否则返回 null
+    private ByteBuffer readIfSmall(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > maxEntryBytes) {
+                return null;
+            }
+            ByteBuffer buf = allocate((int) size);
+            while (buf.hasRemaining() && channel.read(buf) != -1) {
+                // 读满为止
+            }
+            buf.flip();
+            return buf.asReadOnlyBuffer();
+        }
+    }
+
+    private ByteBuffer allocate(int size) {
+        return offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    // 压缩结果不小于原文时不值得发送，返回 null
+    private Variant compressedVariant(String encoding, String mimeType, Validators validators,
+                                      byte[] compressed, long originalLength) {
+        if (compressed.length >= originalLength) {
+            return null;
+        }
+        ByteBuffer buf = allocate(compressed.length);
+        buf.put(compressed).flip();
+        return newVariant(encoding, mimeType, validators, true, buf.asReadOnlyBuffer(), null, compressed.length);
+    }
+
+    // 同一文件版本共享的校验值
+    private static final class Validators {
+        final String tag;
+        final String lastModifiedHttp;
+
+        Validators(String tag, String lastModifiedHttp) {
+            this.tag = tag;
+            this.lastModifiedHttp = lastModifiedHttp;
+        }
+    }
+
+    /**
+     * 计算实体标签（不含引号）：已读入内容时取 SHA-256 前 16 个十六进制字符；
+     * 大文件不读内容，使用修改时间与长度（同 nginx）
+     */
+    private static String entityTag(ByteBuffer body, long lastModified, long length) {
+        if (body == null) {
+            return Long.toHexString(lastModified) + "-" + Long.toHexString(length);
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(body.duplicate());
+            byte[] hash = digest.digest();
+            return HexCodec.append(new StringBuilder(16), hash, 0, 8).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static Variant newVariant(String encoding, String mimeType, Validators validators, boolean vary,
+                                      ByteBuffer body, File file, long length) {
+        // 不同编码是不同的表示，ETag 需区分（强 ETag 要求字节级一致）
+        String etag = "\"" + validators.tag + (encoding == null ? "" : "-" + encoding) + "\"";
+        StringBuilder headers = new StringBuilder();
+        if (mimeType != null) {
+            headers.append("Content-Type: ").append(mimeType).append("\r\n");
+        }
+        if (encoding != null) {
+            headers.append("Content-Encoding: ").append(encoding).append("\r\n");
+        }
+        headers.append("Content-Length: ").append(length).append("\r\n");
+        if (encoding == null) {
+            // 原始内容支持 Range 请求
+            headers.append("Accept-Ranges: bytes\r\n");
+        }
+        // 304 响应只回传校验值
+        StringBuilder validatorHeaders = new StringBuilder();
+        validatorHeaders.append("ETag: ").append(etag).append("\r\n");
+        validatorHeaders.append("Last-Modified: ").append(validators.lastModifiedHttp).append("\r\n");
+        if (vary) {
+            // 响应随 Accept-Encoding 变化，提示中间缓存分别存储
+            validatorHeaders.append("Vary: Accept-Encoding\r\n");
+        }
+        headers.append(validatorHeaders);
+        return new Variant(encoding, etag, headers.toString().getBytes(StandardCharsets.UTF_8),
+                validatorHeaders.toString().getBytes(StandardCharsets.UTF_8), body, file, length);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    // HTTP 的 deflate 编码为 zlib 格式（RFC 1950），即 Deflater 的默认输出
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater)) {
+            dos.write(data);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 根据 Accept-Encoding 选择内容编码（支持 q 值），同等优先时 gzip 优先
+     *
+     * @return "gzip"、"deflate"，或 null 表示不压缩
+     */
+    public static String negotiateEncoding(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        float gzipQ = -1;
+        float deflateQ = -1;
+        float wildcardQ = -1;
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.trim().split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            float q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Float.parseFloat(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if ("gzip".equals(coding) || "x-gzip".equals(coding)) gzipQ = q;
+            else if ("deflate".equals(coding)) deflateQ = q;
+            else if ("*".equals(coding)) wildcardQ = q;
+        }
+        if (gzipQ < 0) gzipQ = wildcardQ;
+        if (deflateQ < 0) deflateQ = wildcardQ;
+        if (gzipQ <= 0 && deflateQ <= 0) {
+            return null;
+        }
+        return gzipQ >= deflateQ ? "gzip" : "deflate";
+    }
+
+    // 淘汰最久未使用的条目直到不超过预算
+    private void evictIfNeeded() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            usedBytes -= it.next().weight();
+            it.remove();
+        }
+    }
+
+    // 使指定文件（或目录下所有文件）对应的条目失效
+    public void invalidate(Path changed) {
+        synchronized (lock) {
+            generation++;
+            Iterator<Map.Entry<Path, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Path, Entry> e = it.next();
+                Path key = e.getKey();
+                // 预压缩的 .gz 文件变化时同样失效原文件条目
+                if (key.startsWith(changed) || changed.equals(key.resolveSibling(key.getFileName() + ".gz"))) {
+                    usedBytes -= e.getValue().weight();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            generation++;
+            entries.clear();
+            usedBytes = 0;
+        }
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getUsedBytes() {
+        synchronized (lock) {
+            return usedBytes;
+        }
+    }
+
+    // 启动后台线程监听静态目录（含子目录）的变化
+    private void startWatcher() {
+        Path rootPath;
+        WatchService watcher;
+        try {
+            rootPath = root.toPath();
+            if (!Files.isDirectory(rootPath)) {
+                return;
+            }
+            watcher = FileSystems.getDefault().newWatchService();
+            registerTree(watcher, rootPath);
+        } catch (IOException e) {
+            Log.warn("Static cache watcher unavailable, caching disabled: " + e.getMessage());
+            return;
+        }
+
+        Thread thread = new Thread(() -> watchLoop(watcher), "static-cache-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        enabled = true;
+    }
+
+    private void watchLoop(WatchService watcher) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // 事件丢失，无法确定变化范围
+                    clear();
+                    continue;
+                }
+                Path changed = dir.resolve((Path) event.context());
+                invalidate(changed);
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                    try {
+                        registerTree(watcher, changed);
+                    } catch (IOException e) {
+                        Log.warn("Cannot watch directory " + changed + ": " + e.getMessage());
+                    }
+                }
+            }
+            key.reset();
+        }
+    }
+
+    private static void registerTree(WatchService watcher, Path start) throws IOException {
+        try (Stream<Path> dirs = Files.walk(start)) {
+            Iterator<Path> it = dirs.filter(Files::isDirectory).iterator();
+            while (it.hasNext()) {
+                it.next().register(watcher,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package server;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 哈希时间轮：大量短期超时共用一个线程和一组槽，设置与取消都是 O(1)
+ * <p>
+ * 任意线程调用 {@link #schedule} 只把任务放入无锁队列，由时间轮线程在下一个刻度按到期刻度放入槽中
+ * （超过一圈的记录剩余圈数）；取消只设置标记，被取消的任务在所在槽被访问时丢弃。
+ * 到期任务在时间轮线程中执行，应当很快返回（如关闭套接字或把事件投递给其他线程）。
+ * 精度为一个刻度。
+ */
+final class TimerWheel {
+    private final long tickNanos;
+    private final Queue<Timeout>[] slots;
+    private final int mask;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startNanos = System.nanoTime();
+    private volatile boolean running = true;
+
+    /**
+     * 定时任务句柄
+     */
+    static final class Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private long rounds;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * 取消任务
+         *
+         * @return 任务尚未执行时返回 true（之后不会再执行）
+         */
+        boolean cancel() {
+            return done.compareAndSet(false, true);
+        }
+
+        boolean isCancelledOrExpired() {
+            return done.get();
+        }
+    }
+
+    /**
+     * @param name       时间轮线程名
+     * @param tickMillis 刻度（精度）
+     * @param slotCount  槽数（向上取整为 2 的幂），一圈的时长为 tickMillis * slotCount
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimerWheel(String name, long tickMillis, int slotCount) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int n = Integer.highestOneBit(Math.max(2, slotCount - 1)) << 1;
+        this.slots = new Queue[n];
+        for (int i = 0; i < n; i++) {
+            slots[i] = new ArrayDeque<>();
+        }
+        this.mask = n - 1;
+        this.worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 在 delayMillis 毫秒后执行 task
+     */
+    Timeout schedule(long delayMillis, Runnable task) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            // 等到下一个刻度
+            long sleep = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            tick++;
+            transferIncoming(tick);
+            expire(slots[(int) (tick & mask)]);
+        }
+    }
+
+    // 新任务按到期刻度放入槽中（已过期的放入当前槽）
+    private void transferIncoming(long currentTick) {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            if (timeout.isCancelledOrExpired()) {
+                continue;
+            }
+            long deadlineTick = Math.max(currentTick, ceilDiv(timeout.deadlineNanos - startNanos, tickNanos));
+            timeout.rounds = (deadlineTick - currentTick) / slots.length;
+            slots[(int) (deadlineTick & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> slot) {
+        for (Iterator<Timeout> it = slot.iterator(); it.hasNext(); ) {
+            Timeout timeout = it.next();
+            if (timeout.isCancelledOrExpired()) {
+                it.remove();
+            } else if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else {
+                it.remove();
+                if (timeout.done.compareAndSet(false, true)) {
+                    try {
+                        timeout.task.run();
+                    } catch (RuntimeException e) {
+                        Log.error("Timer task failed: " + e);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return x <= 0 ? 0 : (x + y - 1) / y;
+    }
+}
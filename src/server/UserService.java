@@ -1,90 +1,249 @@
 package server;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 用户服务（线程安全）
+ * <p>
+ * 用户表为 {@link ConcurrentHashMap}：登录只做无锁读取；注册、更新、删除使用 computeIfAbsent / replace
+ * 等单键原子操作，只在该键所在的桶上短暂加锁。按用户名排序的索引（{@link ConcurrentSkipListSet}）
+ * 在同一原子操作内维护，用户列表的分页与前缀查询在其上进行，不阻塞写操作。
+ * 密码哈希（{@link PasswordHasher}）都在进入任何临界区之前完成，在独立的哈希线程池中执行；线程池繁忙时注册、登录、更新抛出 RejectedExecutionException。
+ * <p>
+ * 使用 {@link #UserService(File)} 创建时，修改通过 {@link UserStore} 写入预写日志，
+ * 在同一个单键原子操作内追加日志记录，等到所在批次 fsync 后才返回（落盘失败时抛出 UncheckedIOException）。
+ * <p>
+ * 登录成功后签发会话（{@link SessionStore}），之后的请求凭令牌查找用户，不再重复计算密码哈希；
+ * 会话只保存在内存中，重启后需重新登录。
+ */
 public class UserService {
     // 内存存储：username → password (加密后)
-    private final Map<String, String> userMap = new HashMap<>();
-    private final Object lock = new Object(); // 用于线程安全
+    private final ConcurrentMap<String, String> userMap = new ConcurrentHashMap<>();
+    // 按用户名排序的二级索引（分页与前缀查询），在用户表对应键的原子操作内同步维护
+    private final ConcurrentSkipListSet<String> usernames = new ConcurrentSkipListSet<>();
+    // 持久化存储，纯内存模式下为 null
+    private final UserStore store;
+    private final PasswordHasher hasher = PasswordHasher.createDefault();
+    // 登录会话：最长 8 小时，空闲 30 分钟过期，最多 10 万个，时间轮刻度 1 秒
+    private final SessionStore sessions = new SessionStore(TimeUnit.HOURS.toMillis(8),
+            TimeUnit.MINUTES.toMillis(30), 100_000, 1000, 512);
+
+    // 纯内存模式（不持久化）
+    public UserService() {
+        this.store = null;
+    }
+
+    // 持久化模式：从数据目录加载已有用户，之后的修改写入预写日志
+    public UserService(File dataDir) throws IOException {
+        this.store = UserStore.open(dataDir, userMap);
+        usernames.addAll(userMap.keySet());
+    }
 
     // 注册：返回true表示成功，false表示用户名已存在
     public boolean register(String username, String password) {
-        synchronized (lock) {
-            if (userMap.containsKey(username)) {
-                return false;
-            }
-            String encryptedPassword = encryptPassword(password);
-            userMap.put(username, encryptedPassword);
-            return true;
+        if (userMap.containsKey(username)) {
+            return false; // 已存在时不必计算哈希
         }
+        String encryptedPassword = hasher.hash(password);
+        boolean[] added = {false};
+        long[] seq = {0};
+        userMap.computeIfAbsent(username, name -> {
+            if (store != null) {
+                seq[0] = store.append(UserStore.OP_PUT, name, encryptedPassword);
+            }
+            usernames.add(name);
+            added[0] = true;
+            return encryptedPassword;
+        });
+        return store == null ? added[0] : awaitIfChanged(seq[0]);
     }
 
-    // 登录：返回true表示验证通过
+    // 登录：返回true表示验证通过（不加锁）
     public boolean login(String username, String password) {
-        synchronized (lock) {
-            String storedPassword = userMap.get(username);
-            if (storedPassword == null) {
-                return false;
-            }
-            String encryptedPassword = encryptPassword(password);
-            return encryptedPassword.equals(storedPassword);
+        return authenticate(username, password) != null;
+    }
+
+    /**
+     * 登录并签发会话
+     *
+     * @return 会话令牌；用户名或密码错误返回 null
+     */
+    public String loginSession(String username, String password) {
+        String credential = authenticate(username, password);
+        return credential == null ? null : sessions.create(username, credential);
+    }
+
+    /**
+     * 按会话令牌查找已登录用户（O(1)，不计算哈希）
+     * <p>
+     * 会话签发后用户被删除或密码被修改时，该会话随之失效。
+     *
+     * @return 用户名；令牌无效或已过期返回 null
+     */
+    public String sessionUser(String token) {
+        SessionStore.Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        if (!session.credential.equals(userMap.get(session.username))) {
+            sessions.remove(token);
+            return null;
+        }
+        return session.username;
+    }
+
+    /**
+     * 本会话用户修改密码后，以新密码重新签发会话（旧令牌作废）
+     *
+     * @return 新令牌；旧令牌无效或用户已不存在返回 null
+     */
+    public String renewSession(String token, String username) {
+        sessions.remove(token);
+        String credential = userMap.get(username);
+        return credential == null ? null : sessions.create(username, credential);
+    }
+
+    // 注销会话
+    public void logout(String token) {
+        sessions.remove(token);
+    }
+
+    // 会话有效期（秒），用于 Cookie 的 Max-Age
+    public long sessionMaxAgeSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(sessions.ttlMillis());
+    }
+
+    // 验证密码，通过时返回当前保存的哈希（旧格式会先升级），否则返回 null
+    private String authenticate(String username, String password) {
+        if (username == null || password == null) {
+            return null;
+        }
+        String storedPassword = userMap.get(username);
+        if (storedPassword == null) {
+            return null;
+        }
+        String current = hasher.verify(password, storedPassword);
+        if (current == null) {
+            return null;
         }
+        if (!current.equals(storedPassword)) {
+            upgradeHash(username, storedPassword, current);
+        }
+        return current;
+    }
+
+    // 登录时把旧格式哈希替换为新格式（期间密码已被修改则放弃）；不等待落盘，未写入时旧哈希仍然有效
+    private void upgradeHash(String username, String oldHash, String newHash) {
+        if (store == null) {
+            userMap.replace(username, oldHash, newHash);
+            return;
+        }
+        userMap.computeIfPresent(username, (name, old) -> {
+            if (!old.equals(oldHash)) {
+                return old;
+            }
+            store.append(UserStore.OP_PUT, name, newHash);
+            return newHash;
+        });
     }
-    
+
     // 更新用户密码：返回true表示成功，false表示用户不存在
     public boolean updateUser(String username, String newPassword) {
-        synchronized (lock) {
-            if (!userMap.containsKey(username)) {
-                return false;
-            }
-            String encryptedPassword = encryptPassword(newPassword);
-            userMap.put(username, encryptedPassword);
-            return true;
+        if (!userMap.containsKey(username)) {
+            return false;
+        }
+        String encryptedPassword = hasher.hash(newPassword);
+        if (store == null) {
+            return userMap.replace(username, encryptedPassword) != null;
         }
+        long[] seq = {0};
+        userMap.computeIfPresent(username, (name, old) -> {
+            seq[0] = store.append(UserStore.OP_PUT, name, encryptedPassword);
+            return encryptedPassword;
+        });
+        return awaitIfChanged(seq[0]);
     }
-    
+
     // 删除用户：返回true表示成功，false表示用户不存在
     public boolean deleteUser(String username) {
-        synchronized (lock) {
-            return userMap.remove(username) != null;
+        boolean[] removed = {false};
+        long[] seq = {0};
+        userMap.computeIfPresent(username, (name, old) -> {
+            if (store != null) {
+                seq[0] = store.append(UserStore.OP_DELETE, name, null);
+            }
+            usernames.remove(name);
+            removed[0] = true;
+            return null;
+        });
+        return store == null ? removed[0] : awaitIfChanged(seq[0]);
+    }
+
+    // 有修改时等待日志落盘
+    private boolean awaitIfChanged(long seq) {
+        if (seq == 0) {
+            return false;
         }
+        store.awaitDurable(seq);
+        return true;
     }
-    
-    // 获取用户列表（用于调试）
-    public String getUserList() {
-        synchronized (lock) {
-            if (userMap.isEmpty()) {
-                return "No users registered";
-            }
-            StringBuilder sb = new StringBuilder("Registered users:\n");
-            for (String username : userMap.keySet()) {
-                sb.append("- ").append(username).append("\n");
-            }
-            return sb.toString();
+
+    // 写出剩余日志并生成快照（停止服务时调用）
+    public void close() {
+        if (store != null) {
+            store.close();
         }
+        hasher.shutdown();
+        sessions.close();
     }
-    
-    // 密码加密：使用SHA-256哈希算法
-    private String encryptPassword(String password) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(password.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
+
+    /**
+     * 按用户名顺序遍历用户（弱一致：遍历期间的并发注册、删除可能部分可见，不阻塞任何写操作）
+     *
+     * @param prefix 只返回以此开头的用户名，空串表示全部
+     * @param after  游标：只返回排在其后的用户名，null 表示从头开始
+     */
+    public Iterator<String> listUsers(String prefix, String after) {
+        NavigableSet<String> tail = after != null && after.compareTo(prefix) >= 0
+                ? usernames.tailSet(after, false)
+                : usernames.tailSet(prefix, true);
+        Iterator<String> it = tail.iterator();
+        return new Iterator<String>() {
+            private String next = advance();
+
+            private String advance() {
+                // 有序索引中同一前缀的用户名连续排列，遇到第一个不匹配的即可结束
+                if (it.hasNext()) {
+                    String name = it.next();
+                    if (name.startsWith(prefix)) {
+                        return name;
+                    }
                 }
-                hexString.append(hex);
+                return null;
             }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            // SHA-256 is always available, but handle anyway
-            throw new RuntimeException("SHA-256 not available", e);
-        }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                String current = next;
+                next = advance();
+                return current;
+            }
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,540 @@
+package server;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 用户数据持久化：预写日志（WAL）+ 快照
+ * <p>
+ * 每次修改先在内存中编码为日志记录追加到待写缓冲区，由后台写线程成批写入当前日志文件并
+ * fsync（组提交）：一次 fsync 之前到达的所有修改共用这次刷盘，调用方在 {@link #awaitDurable}
+ * 中等待所在批次落盘，不会各自触发 fsync。
+ * <p>
+ * 日志超过 {@link #SNAPSHOT_WAL_BYTES} 后切换到新的日志文件，并由快照线程把整个用户表写成紧凑快照，
+ * 写完后删除快照已覆盖的旧日志。启动时分块读取快照，再按顺序重放其后的日志（不使用内存映射：
+ * Windows 上映射在被垃圾回收前不会释放，期间无法删除旧日志或替换快照文件）。
+ * <p>
+ * 日志记录均为绝对值（PUT 用户名 → 密码哈希、DELETE 用户名），重复重放结果不变，
+ * 因此快照可以在日志继续追加的同时遍历并发的用户表生成。
+ * <p>
+ * 文件布局（位于数据目录下）：
+ * <ul>
+ *     <li>users.snapshot：magic、覆盖到的日志代号、若干 (用户名, 值) 条目、结束标记、条目数、CRC32</li>
+ *     <li>users-&lt;代号&gt;.wal：若干 [长度][CRC32][操作][用户名][值] 记录，崩溃时可能有不完整的尾部记录，重放时忽略</li>
+ * </ul>
+ */
+final class UserStore implements Closeable {
+    static final byte OP_PUT = 1;
+    static final byte OP_DELETE = 2;
+
+    // 日志达到该大小后生成快照
+    static final long SNAPSHOT_WAL_BYTES = 32L * 1024 * 1024;
+
+    private static final int SNAPSHOT_MAGIC = 0x48555331; // "HUS1"
+    private static final int END_OF_ENTRIES = -1;
+    // 启动时读取快照与日志的缓冲区大小
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final String SNAPSHOT_FILE = "users.snapshot";
+    private static final String WAL_PREFIX = "users-";
+    private static final String WAL_SUFFIX = ".wal";
+
+    private final File dir;
+    private final Map<String, String> users;
+
+    // 保护待写缓冲区与序号
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasPending = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+    private long appendedSeq = 0;
+    private long durableSeq = 0;
+    private IOException failure;
+    private boolean closing = false;
+
+    // 以下仅由写线程访问
+    private FileChannel wal;
+    private long walGeneration;
+    private long walBytes = 0;
+
+    private final Thread writer;
+    private volatile Thread snapshotThread;
+
+    private UserStore(File dir, Map<String, String> users) {
+        this.dir = dir;
+        this.users = users;
+        this.writer = new Thread(this::writeLoop, "user-wal-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * 打开数据目录：加载快照、重放日志到 users，然后开始新的日志文件
+     *
+     * @param dir   数据目录，不存在时创建
+     * @param users 用户表（并发 Map），之后的快照也从这里读取
+     */
+    static UserStore open(File dir, Map<String, String> users) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create data directory: " + dir);
+        }
+        UserStore store = new UserStore(dir, users);
+        long start = System.nanoTime();
+
+        // 1. 快照
+        long firstGeneration = 0;
+        File snapshot = new File(dir, SNAPSHOT_FILE);
+        if (snapshot.isFile()) {
+            firstGeneration = readSnapshot(snapshot, users);
+        }
+
+        // 2. 快照之后的日志，按代号顺序重放
+        TreeMap<Long, File> logs = listLogs(dir);
+        long replayed = 0;
+        long lastGeneration = firstGeneration - 1;
+        for (Map.Entry<Long, File> log : logs.entrySet()) {
+            lastGeneration = Math.max(lastGeneration, log.getKey());
+            if (log.getKey() >= firstGeneration && log.getValue().length() > 0) {
+                replayed += replayLog(log.getValue(), users);
+            } else if (!log.getValue().delete()) {
+                // 已被快照覆盖或为空的日志直接删除
+                Log.warn("Cannot delete old log: " + log.getValue());
+            }
+        }
+        Log.info("User store loaded " + users.size() + " users (" + replayed + " log records) in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+
+        // 3. 新日志文件；有重放记录时立即压缩为快照
+        store.walGeneration = lastGeneration + 1;
+        store.wal = openLog(dir, store.walGeneration);
+        if (replayed > 0) {
+            store.startSnapshot(store.walGeneration);
+        }
+        store.writer.start();
+        return store;
+    }
+
+    /**
+     * 追加一条修改记录（只写入内存缓冲区，不等待落盘）
+     * <p>
+     * 调用方须在修改用户表的同一个原子操作内调用（如 ConcurrentHashMap.compute），
+     * 保证同一用户的日志顺序与内存中的修改顺序一致。
+     *
+     * @param value 新的值；OP_DELETE 时为 null
+     * @return 记录序号，传给 {@link #awaitDurable}
+     */
+    long append(byte op, String username, String value) {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        byte[] data = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 1 + 4 + name.length + 4 + (data == null ? 0 : data.length);
+
+        lock.lock();
+        try {
+            if (closing) {
+                // 在调用方的原子操作内抛出，用户表不会被修改
+                throw new IllegalStateException("User store is closed");
+            }
+            ensurePending(8 + bodyLength);
+            int start = pending.position();
+            pending.putInt(bodyLength);
+            pending.putInt(0); // CRC 占位
+            pending.put(op);
+            pending.putInt(name.length).put(name);
+            if (data == null) {
+                pending.putInt(-1);
+            } else {
+                pending.putInt(data.length).put(data);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(pending.array(), start + 8, bodyLength);
+            pending.putInt(start + 4, (int) crc.getValue());
+            hasPending.signal();
+            return ++appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待指定序号及之前的记录全部落盘
+     *
+     * @throws UncheckedIOException 写日志失败（此后所有修改都会失败）
+     */
+    void awaitDurable(long seq) {
+        lock.lock();
+        try {
+            while (durableSeq < seq && failure == null) {
+                durable.awaitUninterruptibly();
+            }
+            if (durableSeq < seq) {
+                throw new UncheckedIOException("User store write failed", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写出剩余记录、停止写线程，并生成最终快照以加快下次启动
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closing) return;
+            closing = true;
+            hasPending.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+            Thread running = snapshotThread;
+            if (running != null) running.join();
+            wal.close();
+            if (failure == null && walBytes > 0) {
+                // 当前日志有新记录时生成最终快照（覆盖到当前日志为止），当前及更早的日志随后删除
+                writeSnapshot(walGeneration + 1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            Log.error("User store close error: " + e.getMessage());
+        }
+    }
+
+    // 写线程：交换缓冲区后写入并 fsync，一次刷盘覆盖期间到达的所有记录
+    private void writeLoop() {
+        while (true) {
+            long batchSeq;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && !closing) {
+                    hasPending.awaitUninterruptibly();
+                }
+                if (pending.position() == 0) {
+                    return; // 已关闭且没有剩余记录
+                }
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                batchSeq = appendedSeq;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                writing.flip();
+                walBytes += writing.remaining();
+                while (writing.hasRemaining()) {
+                    wal.write(writing);
+                }
+                wal.force(false);
+                writing.clear();
+                if (walBytes >= SNAPSHOT_WAL_BYTES && snapshotThread == null) {
+                    rotate();
+                }
+            } catch (IOException e) {
+                Log.error("User store write failed: " + e.getMessage());
+                lock.lock();
+                try {
+                    failure = e;
+                    durable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                durableSeq = batchSeq;
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // 切换到新的日志文件，并在后台为切换前的全部修改生成快照
+    private void rotate() throws IOException {
+        FileChannel next = openLog(dir, walGeneration + 1);
+        wal.close();
+        wal = next;
+        walGeneration++;
+        walBytes = 0;
+        startSnapshot(walGeneration);
+    }
+
+    private void startSnapshot(long coveredGeneration) {
+        Thread t = new Thread(() -> {
+            try {
+                writeSnapshot(coveredGeneration);
+            } catch (IOException e) {
+                Log.error("User snapshot failed: " + e.getMessage());
+            } finally {
+                snapshotThread = null;
+            }
+        }, "user-snapshot");
+        t.setDaemon(true);
+        snapshotThread = t;
+        t.start();
+    }
+
+    /**
+     * 把当前用户表写成快照，记录 nextGeneration：代号小于它的日志都已包含在快照中
+     * <p>
+     * 先写临时文件并 fsync，再原子替换旧快照，最后删除已覆盖的日志。
+     */
+    private void writeSnapshot(long nextGeneration) throws IOException {
+        long start = System.nanoTime();
+        File tmp = new File(dir, SNAPSHOT_FILE + ".tmp");
+        long count = 0;
+        CRC32 crc = new CRC32();
+        try (FileOutputStream file = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 256 * 1024));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(nextGeneration);
+            out.flush();
+            // 条目部分计算 CRC
+            DataOutputStream entries = new DataOutputStream(new CheckedOutputStream(out, crc));
+            for (Map.Entry<String, String> entry : users.entrySet()) {
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] value = entry.getValue().getBytes(StandardCharsets.UTF_8);
+                entries.writeInt(name.length);
+                entries.write(name);
+                entries.writeInt(value.length);
+                entries.write(value);
+                count++;
+            }
+            entries.writeInt(END_OF_ENTRIES);
+            entries.flush();
+            out.writeLong(count);
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(tmp.toPath(), new File(dir, SNAPSHOT_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        for (Map.Entry<Long, File> log : listLogs(dir).entrySet()) {
+            if (log.getKey() < nextGeneration && !log.getValue().delete()) {
+                Log.warn("Cannot delete old log: " + log.getValue());
+            }
+        }
+        Log.info("User snapshot written: " + count + " users in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    // 读取快照到 users，返回需要继续重放的第一个日志代号
+    private static long readSnapshot(File file, Map<String, String> users) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ChannelInput in = new ChannelInput(channel);
+            if (!in.ensure(12) || in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a user snapshot: " + file);
+            }
+            long nextGeneration = in.readLong();
+            CRC32 crc = new CRC32();
+            long count = 0;
+            try {
+                in.startChecksum(crc);
+                while (true) {
+                    int nameLength = in.readInt();
+                    if (nameLength == END_OF_ENTRIES) break;
+                    String name = in.readString(nameLength);
+                    String value = in.readString(in.readInt());
+                    users.put(name, value);
+                    count++;
+                }
+                in.stopChecksum();
+                long expectedCount = in.readLong();
+                int expectedCrc = in.readInt();
+                if (expectedCount != count || expectedCrc != (int) crc.getValue()) {
+                    throw new IOException("Corrupt user snapshot: " + file);
+                }
+            } catch (EOFException | RuntimeException e) {
+                throw new IOException("Corrupt user snapshot: " + file, e);
+            }
+            return nextGeneration;
+        }
+    }
+
+    // 重放一个日志文件，遇到不完整或校验失败的记录（崩溃时的尾部）即停止
+    private static long replayLog(File file, Map<String, String> users) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ChannelInput in = new ChannelInput(channel);
+            CRC32 crc = new CRC32();
+            long records = 0;
+            long recordStart = 0;
+            while (in.ensure(8)) {
+                recordStart = in.position();
+                int bodyLength = in.readInt();
+                int expectedCrc = in.readInt();
+                if (bodyLength < 9 || !in.ensure(bodyLength)) break;
+                ByteBuffer body = in.buf.slice();
+                body.limit(bodyLength);
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != expectedCrc) break;
+
+                byte op = in.buf.get();
+                String name = in.readString(in.readInt());
+                int valueLength = in.readInt();
+                if (op == OP_PUT) {
+                    users.put(name, in.readString(valueLength));
+                } else if (op == OP_DELETE) {
+                    users.remove(name);
+                }
+                records++;
+                recordStart = in.position();
+            }
+            if (recordStart < in.size) {
+                Log.warn("Ignoring incomplete tail of " + file + " (" + (in.size - recordStart) + " bytes)");
+            }
+            return records;
+        }
+    }
+
+    /**
+     * 顺序读取文件：按块读入堆缓冲区，{@link #ensure} 保证缓冲区中至少有 n 个未读字节
+     * （不足时把剩余字节移到开头再读，单个字段超过缓冲区时扩容）
+     */
+    private static final class ChannelInput {
+        private final FileChannel channel;
+        final long size;
+        ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        // 缓冲区开头对应的文件偏移
+        private long bufferOffset;
+        // 正在累计校验和时，缓冲区中尚未计入的起点
+        private CRC32 checksum;
+        private int checksumMark;
+
+        ChannelInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            buf.flip();
+        }
+
+        long position() {
+            return bufferOffset + buf.position();
+        }
+
+        // 文件剩余部分不足 n 字节时返回 false
+        boolean ensure(int n) throws IOException {
+            if (n < 0 || n > size - position()) {
+                return false;
+            }
+            if (buf.remaining() >= n) {
+                return true;
+            }
+            updateChecksum();
+            bufferOffset += buf.position();
+            if (n > buf.capacity()) {
+                ByteBuffer bigger = ByteBuffer.allocate(n);
+                bigger.put(buf);
+                buf = bigger;
+            } else {
+                buf.compact();
+            }
+            while (buf.position() < n && channel.read(buf) >= 0) {
+                // 读到至少 n 字节
+            }
+            buf.flip();
+            checksumMark = 0;
+            return buf.remaining() >= n;
+        }
+
+        int readInt() throws IOException {
+            require(4);
+            return buf.getInt();
+        }
+
+        long readLong() throws IOException {
+            require(8);
+            return buf.getLong();
+        }
+
+        String readString(int length) throws IOException {
+            require(length);
+            String value = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+            buf.position(buf.position() + length);
+            return value;
+        }
+
+        // 之后读取的字节计入校验和，直到 stopChecksum
+        void startChecksum(CRC32 crc) {
+            checksum = crc;
+            checksumMark = buf.position();
+        }
+
+        void stopChecksum() {
+            updateChecksum();
+            checksum = null;
+        }
+
+        private void updateChecksum() {
+            if (checksum != null && buf.position() > checksumMark) {
+                ByteBuffer consumed = buf.duplicate();
+                consumed.position(checksumMark).limit(buf.position());
+                checksum.update(consumed);
+                checksumMark = buf.position();
+            }
+        }
+
+        private void require(int n) throws IOException {
+            if (!ensure(n)) {
+                throw new EOFException("Unexpected end of file at offset " + position());
+            }
+        }
+    }
+
+    private static TreeMap<Long, File> listLogs(File dir) {
+        TreeMap<Long, File> logs = new TreeMap<>();
+        File[] files = dir.listFiles();
+        if (files == null) return logs;
+        for (File f : files) {
+            String name = f.getName();
+            if (name.startsWith(WAL_PREFIX) && name.endsWith(WAL_SUFFIX)) {
+                try {
+                    logs.put(Long.parseLong(name.substring(WAL_PREFIX.length(), name.length() - WAL_SUFFIX.length())), f);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return logs;
+    }
+
+    private static FileChannel openLog(File dir, long generation) throws IOException {
+        File file = new File(dir, WAL_PREFIX + generation + WAL_SUFFIX);
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    // 待写缓冲区空间不足时扩容（调用方持有 lock）
+    private void ensurePending(int extra) {
+        if (pending.remaining() < extra) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + extra));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+import jdk.jfr.EventSettings;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+
+/**
+ * 虚拟线程支持（JDK 21+）
+ * <p>
+ * 项目需兼容 JDK 11+ 编译，因此通过反射创建虚拟线程执行器与 JFR 事件流（{@code RecordingStream}，JDK 14+）；
+ * 运行时 JDK 不支持时 {@link #isSupported()} 返回 false，由调用方回退到平台线程池。
+ */
+public class VirtualThreads {
+    // 虚拟线程被钉住（pinned）超过该时长才上报
+    private static final Duration PINNED_THRESHOLD = Duration.ofMillis(20);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String RECORDING_STREAM = "jdk.jfr.consumer.RecordingStream";
+
+    private static final Method NEW_EXECUTOR = findExecutorFactory();
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    // 每个任务一个虚拟线程的执行器
+    public static ExecutorService newPerTaskExecutor() {
+        if (NEW_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads require JDK 21+");
+        }
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create virtual thread executor", e);
+        }
+    }
+
+    /**
+     * 通过 JFR 事件流监听虚拟线程钉住载体线程（synchronized 内阻塞、native 调用等）的事件，
+     * 每次发生时打印耗时与栈顶位置
+     *
+     * @return 监听流，停止服务器时用 {@link #stopPinnedMonitor} 关闭；JFR 事件流不可用时返回 null
+     */
+    public static AutoCloseable startPinnedMonitor() {
+        try {
+            Class<?> type = Class.forName(RECORDING_STREAM);
+            Object stream = type.getConstructor().newInstance();
+            EventSettings settings = (EventSettings) type.getMethod("enable", String.class)
+                    .invoke(stream, PINNED_EVENT);
+            settings.withThreshold(PINNED_THRESHOLD).withStackTrace();
+            Consumer<RecordedEvent> handler = VirtualThreads::reportPinned;
+            type.getMethod("onEvent", String.class, Consumer.class).invoke(stream, PINNED_EVENT, handler);
+            type.getMethod("startAsync").invoke(stream);
+            return (AutoCloseable) stream;
+        } catch (Exception | LinkageError e) {
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            Log.warn("Pinned-thread monitor unavailable: " + cause);
+            return null;
+        }
+    }
+
+    public static void stopPinnedMonitor(AutoCloseable monitor) {
+        try {
+            monitor.close();
+        } catch (Exception e) {
+            Log.warn("Cannot close pinned-thread monitor: " + e.getMessage());
+        }
+    }
+
+    private static void reportPinned(RecordedEvent event) {
+        StringBuilder sb = new StringBuilder("Virtual thread pinned for ")
+                .append(event.getDuration().toMillis()).append(" ms");
+        // 优先定位到本项目代码中的调用点，否则取栈顶帧
+        RecordedFrame location = null;
+        if (event.getStackTrace() != null) {
+            for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+                if (!frame.isJavaFrame()) continue;
+                if (location == null) location = frame;
+                if (frame.getMethod().getType().getName().startsWith("server.")) {
+                    location = frame;
+                    break;
+                }
+            }
+        }
+        if (location != null) {
+            sb.append(" at ").append(location.getMethod().getType().getName())
+                    .append('.').append(location.getMethod().getName())
+                    .append(':').append(location.getLineNumber());
+        }
+        Log.warn(sb.toString());
+    }
+
+    private static Method findExecutorFactory() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}